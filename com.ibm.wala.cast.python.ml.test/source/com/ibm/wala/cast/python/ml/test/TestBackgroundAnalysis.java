@@ -0,0 +1,43 @@
+package com.ibm.wala.cast.python.ml.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.lsp.WALAServer;
+import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
+import com.ibm.wala.cast.python.ml.driver.PythonDriver;
+import com.ibm.wala.cast.python.util.AnalysisBudget;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.NullProgressMonitor;
+
+public class TestBackgroundAnalysis extends TestPythonMLCallGraphShape {
+
+	@Test
+	public void testBudgetedThenBackground() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException, InterruptedException, ExecutionException {
+		WALAServer lsp = WALAServer.launchOnServerPort(0, PythonDriver.python, true);
+		PythonDriver.setBackgroundAnalysis(true);
+		try {
+			PythonAnalysisEngine<?> engine = (PythonAnalysisEngine<?>) PythonDriver.python.apply(lsp).apply("python");
+			engine.setBudget(new AnalysisBudget(-1, 0, -1));
+			engine.setModuleFiles(Collections.singleton(getScript("buggy_convolutional_network.py")));
+			PropagationCallGraphBuilder builder = (PropagationCallGraphBuilder) engine.defaultCallGraphBuilder();
+			builder.makeCallGraph(engine.getOptions(), new NullProgressMonitor());
+			engine.performAnalysis(builder);
+			assertTrue(PythonDriver.hasPartialResults(lsp));
+
+			PythonDriver.awaitBackgroundAnalysis(lsp);
+			assertFalse(PythonDriver.hasPartialResults(lsp));
+		} finally {
+			PythonDriver.setBackgroundAnalysis(false);
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.ibm.wala.cast.python.ml.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.ml.client.PythonTensorAnalysisEngine;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.NullProgressMonitor;
+
+public class TestErrorDelta extends TestPythonMLCallGraphShape {
+
+	private static void analyze(PythonTensorAnalysisEngine engine) throws IllegalArgumentException, CancelException, IOException {
+		PropagationCallGraphBuilder builder = (PropagationCallGraphBuilder) engine.defaultCallGraphBuilder();
+		builder.makeCallGraph(engine.getOptions(), new NullProgressMonitor());
+		engine.performAnalysis(builder);
+	}
+
+	@Test
+	public void testSameErrorsTwice() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonTensorAnalysisEngine engine = (PythonTensorAnalysisEngine) makeEngine("buggy_convolutional_network.py");
+
+		analyze(engine);
+		assertEquals(engine.getErrors().size(), engine.getAddedErrors().size());
+		assertTrue(engine.getRemovedErrors().isEmpty());
+
+		analyze(engine);
+		assertTrue(engine.getAddedErrors().isEmpty());
+		assertTrue(engine.getRemovedErrors().isEmpty());
+	}
+
+}
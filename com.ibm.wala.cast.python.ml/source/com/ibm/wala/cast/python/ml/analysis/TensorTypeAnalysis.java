@@ -23,8 +23,8 @@ import com.ibm.wala.cast.python.ml.types.TensorType;
 import com.ibm.wala.cast.python.ml.types.TensorType.CompoundDim;
 import com.ibm.wala.cast.python.ml.types.TensorType.Dimension;
 import com.ibm.wala.cast.python.ml.types.TensorType.SymbolicDim;
+import com.ibm.wala.cast.python.parser.PythonSourcePosition;
 import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
-import com.ibm.wala.cast.util.SourceBuffer;
 import com.ibm.wala.dataflow.graph.AbstractMeetOperator;
 import com.ibm.wala.dataflow.graph.DataflowSolver;
 import com.ibm.wala.dataflow.graph.IKilldallFramework;
@@ -125,8 +125,7 @@ public class TensorTypeAnalysis extends DataflowSolver<PointsToSetVariable, Tens
 			}
 			if (n == dims + 2) {
 				try {
-					SourceBuffer s = new SourceBuffer(pos);
-					return "tf.reshape(" + s.toString() + ", [" + shape + "])";
+					return "tf.reshape(" + PythonSourcePosition.getText(pos) + ", [" + shape + "])";
 				} catch (IOException e) {
 					e.printStackTrace();
 					return null;
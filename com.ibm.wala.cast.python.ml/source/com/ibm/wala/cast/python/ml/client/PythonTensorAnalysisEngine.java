@@ -1,18 +1,25 @@
 package com.ibm.wala.cast.python.ml.client;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.lsp4j.DiagnosticSeverity;
+
+import com.ibm.wala.cast.loader.AstMethod;
 import com.ibm.wala.cast.lsp.AnalysisError;
 import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonSSAPropagationCallGraphBuilder;
 import com.ibm.wala.cast.python.ml.analysis.TensorTypeAnalysis;
 import com.ibm.wala.cast.python.ml.types.TensorType;
 import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
 import com.ibm.wala.cast.types.AstMethodReference;
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.LocalPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointsToSetVariable;
@@ -28,6 +35,7 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.NullProgressMonitor;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.graph.Graph;
 import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
 
@@ -43,7 +51,86 @@ public class PythonTensorAnalysisEngine extends PythonAnalysisEngine<TensorTypeA
 	private static final MethodReference set_shape = MethodReference.findOrCreate(TypeReference.findOrCreate(PythonTypes.pythonLoader, TypeName.string2TypeName("Ltensorflow/functions/set_shape")), AstMethodReference.fnSelector);
 
 	private final Map<PointerKey, AnalysisError> errorLog = HashMapFactory.make();
+
+	private String partial;
+
+	private Map<String, AnalysisError> lastErrors = Collections.emptyMap();
+
+	private Set<AnalysisError> addedErrors = Collections.emptySet();
+
+	private Set<AnalysisError> removedErrors = Collections.emptySet();
+
+	/**
+	 * an error found in an analysis that ran out of budget, or the notice
+	 * that an analysis did, so that other errors may be missing
+	 */
+	private static class PartialAnalysisError implements AnalysisError {
+		private final AnalysisError error;
+		private final Position pos;
+		private final String reason;
+
+		private PartialAnalysisError(AnalysisError error, Position pos, String reason) {
+			this.error = error;
+			this.pos = pos;
+			this.reason = reason;
+		}
+
+		public Iterable<Pair<Position,String>> related() {
+			return error != null? error.related(): Collections.emptySet();
+		}
+
+		@Override
+		public Position position() {
+			return pos;
+		}
+
+		@Override
+		public String toString() {
+			return toString(false);
+		}
+
+		@Override
+		public String toString(boolean useMarkdown) {
+			if (error != null) {
+				return error.toString(useMarkdown) + " (partial analysis: " + reason + ")";
+			} else {
+				return "Analysis incomplete, so some problems may not be reported: " + reason;
+			}
+		}
+
+		@Override
+		public DiagnosticSeverity severity() {
+			return error != null? error.severity(): DiagnosticSeverity.Information;
+		}
+	}
 	
+	/**
+	 * where the notice that an analysis ran out of budget is kept for a
+	 * script, apart from any error the analysis found for its values
+	 */
+	private static class IncompleteAnalysisKey implements PointerKey {
+		private final CGNode script;
+
+		private IncompleteAnalysisKey(CGNode script) {
+			this.script = script;
+		}
+
+		@Override
+		public int hashCode() {
+			return 1297 * script.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof IncompleteAnalysisKey && script.equals(((IncompleteAnalysisKey)o).script);
+		}
+
+		@Override
+		public String toString() {
+			return "[incomplete analysis of " + script + "]";
+		}
+	}
+
 	private static Set<PointsToSetVariable> getDataflowSources(Graph<PointsToSetVariable> dataflow) {
 		Set<PointsToSetVariable> sources = HashSetFactory.make();
 		for(PointsToSetVariable src : dataflow) {
@@ -107,6 +194,9 @@ public class PythonTensorAnalysisEngine extends PythonAnalysisEngine<TensorTypeA
 	
 	@Override
 	public TensorTypeAnalysis performAnalysis(PropagationCallGraphBuilder builder) throws CancelException {
+		errorLog.clear();
+		partial = null;
+
 		Graph<PointsToSetVariable> dataflow = SlowSparseNumberedGraph.duplicate(builder.getPropagationSystem().getFlowGraphIncludingImplicitConstraints());
 
 		Set<PointsToSetVariable> sources = getDataflowSources(dataflow);
@@ -144,6 +234,12 @@ public class PythonTensorAnalysisEngine extends PythonAnalysisEngine<TensorTypeA
 		TensorTypeAnalysis tt = new TensorTypeAnalysis(dataflow, init, shapeOps, setCalls, conv2ds, conv3ds, errorLog);
 		
 		tt.solve(new NullProgressMonitor());
+
+		if (builder instanceof PythonSSAPropagationCallGraphBuilder && ((PythonSSAPropagationCallGraphBuilder)builder).isPartial()) {
+			markPartial(builder, ((PythonSSAPropagationCallGraphBuilder)builder).getPartialReason());
+		}
+
+		computeErrorDelta();
 		
 		return tt;
 	}
@@ -162,6 +258,78 @@ public class PythonTensorAnalysisEngine extends PythonAnalysisEngine<TensorTypeA
 		return reshapeTypes;
 	}
 	
+	private void markPartial(PropagationCallGraphBuilder builder, String reason) {
+		partial = reason;
+
+		for(Map.Entry<PointerKey, AnalysisError> e : errorLog.entrySet()) {
+			e.setValue(new PartialAnalysisError(e.getValue(), e.getValue().position(), reason));
+		}
+
+		CallGraph CG = builder.getCallGraph();
+		for(Iterator<CGNode> scripts = CG.getSuccNodes(CG.getFakeRootNode()); scripts.hasNext(); ) {
+			CGNode script = scripts.next();
+			if (script.getMethod() instanceof AstMethod) {
+				Position pos = ((AstMethod)script.getMethod()).getSourcePosition();
+				if (pos != null) {
+					errorLog.put(new IncompleteAnalysisKey(script), new PartialAnalysisError(null, pos, reason));
+				}
+			}
+		}
+	}
+
+	private static String signature(AnalysisError error) {
+		Position pos = error.position();
+		String where = pos == null? "": pos.getURL() + ":" + pos.getFirstOffset() + "-" + pos.getLastOffset() + ": ";
+		return where + error.toString(false);
+	}
+
+	private void computeErrorDelta() {
+		Map<String, AnalysisError> current = HashMapFactory.make();
+		for(AnalysisError error : errorLog.values()) {
+			current.put(signature(error), error);
+		}
+
+		addedErrors = HashSetFactory.make();
+		for(Map.Entry<String, AnalysisError> e : current.entrySet()) {
+			if (! lastErrors.containsKey(e.getKey())) {
+				addedErrors.add(e.getValue());
+			}
+		}
+
+		removedErrors = HashSetFactory.make();
+		for(Map.Entry<String, AnalysisError> e : lastErrors.entrySet()) {
+			if (! current.containsKey(e.getKey())) {
+				removedErrors.add(e.getValue());
+			}
+		}
+
+		lastErrors = current;
+	}
+
+	/**
+	 * @return the errors of the last analysis by this engine that the one
+	 * before it did not report
+	 */
+	public Set<AnalysisError> getAddedErrors() {
+		return addedErrors;
+	}
+
+	/**
+	 * @return the errors that the analysis before the last one by this
+	 * engine reported, but the last one does not
+	 */
+	public Set<AnalysisError> getRemovedErrors() {
+		return removedErrors;
+	}
+
+	/**
+	 * @return whether the last analysis ran out of budget, in which case
+	 * its errors are marked as partial
+	 */
+	public boolean isPartial() {
+		return partial != null;
+	}
+
 	public Map<PointerKey, AnalysisError> getErrors() {
 		return errorLog;
 	}
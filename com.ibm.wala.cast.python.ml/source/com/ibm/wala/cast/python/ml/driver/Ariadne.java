@@ -11,16 +11,19 @@
  *****************************************************************************/
 package com.ibm.wala.cast.python.ml.driver;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.cli.CommandLine;
@@ -35,7 +38,19 @@ import org.eclipse.lsp4j.DiagnosticSeverity;
 
 import com.ibm.wala.cast.lsp.Util;
 import com.ibm.wala.cast.lsp.WALAServer;
+import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
+import com.ibm.wala.cast.python.ipa.callgraph.CountingCallGraphMetrics;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonSSAPropagationCallGraphBuilder;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle;
+import com.ibm.wala.cast.python.loader.TranslatedModuleCache;
+import com.ibm.wala.cast.python.parser.IncrementalTranslation;
+import com.ibm.wala.cast.python.util.AnalysisBudget;
+import com.ibm.wala.cast.python.util.PythonInterpreterPool;
+import com.ibm.wala.cast.python.util.PythonProjectLoader;
 import com.ibm.wala.cast.python.ml.driver.DiagnosticsFormatter.FORMAT;
+import com.ibm.wala.client.AbstractAnalysisEngine;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.util.CancelException;
 
@@ -106,6 +121,72 @@ public class Ariadne {
 				.required(false).build();
 		options.addOption(relatedOption);
 		optModes.put(relatedOption.getLongOpt(), relatedOptModes);
+
+		final EnumSet<MODE> projectOptModes = EnumSet.of(MODE.linter);
+		final Option includeOption = Option.builder().longOpt("include")
+				.hasArgs().valueSeparator(',').argName("glob")
+				.desc("Globs, relative to a directory argument, of the files to lint in it.  Default: " + PythonProjectLoader.DEFAULT_INCLUDE + " [modes: " + collToString(projectOptModes) + "]")
+				.required(false).build();
+		options.addOption(includeOption);
+		optModes.put(includeOption.getLongOpt(), projectOptModes);
+
+		final Option excludeOption = Option.builder().longOpt("exclude")
+				.hasArgs().valueSeparator(',').argName("glob")
+				.desc("Globs, relative to a directory argument, of files and directories to skip in it.  .gitignore files are honoured as well [modes: " + collToString(projectOptModes) + "]")
+				.required(false).build();
+		options.addOption(excludeOption);
+		optModes.put(excludeOption.getLongOpt(), projectOptModes);
+
+		final Option threadsOption = Option.builder().longOpt("threads")
+				.hasArg().argName("threads")
+				.desc("Number of threads on which to build the IR of newly reached functions ahead of time during call graph construction.  Constraints are still generated and solved on one thread, so the results are the same for any number.  Default: 1")
+				.required(false).build();
+		options.addOption(threadsOption);
+
+		final Option compactSetsOption = Option.builder().longOpt("compact-sets")
+				.desc("Keep points-to sets in a compact, shared representation, trading some speed for less heap")
+				.required(false).build();
+		options.addOption(compactSetsOption);
+
+		final Option timeoutOption = Option.builder().longOpt("timeout")
+				.hasArg().argName("milliseconds")
+				.desc("Stop building the call graph of an analysis after this long, and report what was found by then as partial; other than as a linter, the analysis is then finished in the background.  Default: no limit")
+				.required(false).build();
+		options.addOption(timeoutOption);
+
+		final Option maxStepsOption = Option.builder().longOpt("max-steps")
+				.hasArg().argName("steps")
+				.desc("Stop building the call graph of an analysis after this many solver steps, and report what was found by then as partial.  Default: no limit")
+				.required(false).build();
+		options.addOption(maxStepsOption);
+
+		final Option maxHeapOption = Option.builder().longOpt("max-heap")
+				.hasArg().argName("percent")
+				.desc("Stop building the call graph of an analysis once this percentage of the maximum heap is in use, and report what was found by then as partial.  Default: no limit")
+				.required(false).build();
+		options.addOption(maxHeapOption);
+
+		final EnumSet<MODE> metricsOptModes = EnumSet.of(MODE.linter);
+		final Option metricsOption = Option.builder().longOpt("metrics")
+				.hasArg().argName("file")
+				.desc("Count and time what call graph construction does, and write a JSON summary of it to this file once the files are analyzed")
+				.required(false).build();
+		options.addOption(metricsOption);
+		optModes.put(metricsOption.getLongOpt(), metricsOptModes);
+
+		final Option bundleOption = Option.builder().longOpt("summary-bundle")
+				.hasArg().argName("file")
+				.desc("Model the libraries in this summary bundle, as made by PyiSummaryGenerator from type stubs, in preference to any other model of them.  Can be repeated")
+				.required(false).build();
+		options.addOption(bundleOption);
+
+		final EnumSet<MODE> cacheOptModes = EnumSet.of(MODE.linter);
+		final Option cacheDirOption = Option.builder().longOpt("cache-dir")
+				.hasArg().argName("directory")
+				.desc("Keep the translations of modules in this directory, so that a later run skips parsing the modules that have not changed.  Default: translations are not kept")
+				.required(false).build();
+		options.addOption(cacheDirOption);
+		optModes.put(cacheDirOption.getLongOpt(), cacheOptModes);
 		
 		
 		final Option helpOpt = Option.builder().longOpt("help").argName("help")
@@ -113,12 +194,18 @@ public class Ariadne {
 		options.addOption(helpOpt);
 
 		MODE mode = default_mode;
+		File cacheDir = null;
 		int port = -1;
 
 		FORMAT format = default_format;
 		Set<DiagnosticSeverity> severityList = default_severityList;
 		int related = -1;
 		Map<String,String> uriTextPairs = new HashMap<String,String>();
+		AnalysisBudget budget = AnalysisBudget.UNLIMITED;
+		boolean compactSets = false;
+		CountingCallGraphMetrics metrics = null;
+		Path metricsPath = null;
+		List<PythonSummaryBundle> bundles = new ArrayList<>();
 
 
 		try {
@@ -220,16 +307,102 @@ public class Ariadne {
 				}
 			}
 			
+			final String threadsString = cmd.getOptionValue("threads");
+			if(threadsString != null) {
+				try {
+					PythonSSAPropagationCallGraphBuilder.setIRPrefetchThreads(Math.max(1, Integer.parseInt(threadsString.trim())));
+				} catch(NumberFormatException e) {
+					System.err.println("Error: thread count passed to --threads option is not valid.  Please specify a number");
+
+					printUsage(options);
+					System.exit(1);
+				}
+			}
+
+			compactSets = cmd.hasOption("compact-sets");
+
+			final String cacheDirString = cmd.getOptionValue("cache-dir");
+			if(cacheDirString != null) {
+				cacheDir = new File(cacheDirString);
+			}
+
+			try {
+				final String timeoutString = cmd.getOptionValue("timeout");
+				if(timeoutString != null) {
+					budget = budget.withMillis(Long.parseLong(timeoutString.trim()));
+				}
+				final String maxStepsString = cmd.getOptionValue("max-steps");
+				if(maxStepsString != null) {
+					budget = budget.withSteps(Long.parseLong(maxStepsString.trim()));
+				}
+				final String maxHeapString = cmd.getOptionValue("max-heap");
+				if(maxHeapString != null) {
+					budget = budget.withHeapFraction(Double.parseDouble(maxHeapString.trim()) / 100);
+				}
+			} catch(NumberFormatException e) {
+				System.err.println("Error: value passed to --timeout, --max-steps or --max-heap option is not valid.  Please specify a number");
+
+				printUsage(options);
+				System.exit(1);
+			}
+			final String[] bundleStrings = cmd.getOptionValues("summary-bundle");
+			if(bundleStrings != null) {
+				for(String bundleString : bundleStrings) {
+					try {
+						bundles.add(PythonSummaryBundle.open(Paths.get(bundleString)));
+					} catch(IOException e) {
+						System.err.println("Failed to read summary bundle: " + bundleString);
+						System.exit(1);
+					}
+				}
+			}
+
+			final String metricsString = cmd.getOptionValue("metrics");
+			if(metricsString != null) {
+				metricsPath = Paths.get(metricsString);
+				metrics = new CountingCallGraphMetrics();
+				PythonSSAPropagationCallGraphBuilder.setMetrics(metrics);
+			}
+			
 			switch(mode) {
 			case linter: {
 				List<String> files = cmd.getArgList();
 				if(files.isEmpty()) {
-					System.err.println("Warning: Ariadne run as a linter, but no files were specified.  Run with --help for usage information.");
+					System.err.println("Warning: Ariadne run as a linter, but no files or directories were specified.  Run with --help for usage information.");
 				}
 
+				final String[] includes = cmd.getOptionValues("include");
+				final String[] excludes = cmd.getOptionValues("exclude");
 				for(String fileName : files) {
+					final Path path = Paths.get(fileName);
+					if (Files.isDirectory(path)) {
+						PythonProjectLoader project = new PythonProjectLoader(path);
+						if (includes != null) {
+							for(String glob : includes) {
+								project.include(glob);
+							}
+						}
+						if (excludes != null) {
+							for(String glob : excludes) {
+								project.exclude(glob);
+							}
+						}
+						try {
+							for(Map.Entry<Path,String> file : project.readFiles().entrySet()) {
+								String name = path.resolve(project.getRoot().relativize(file.getKey())).toString();
+								if(uriTextPairs.containsKey(name)) {
+									System.err.println("WARNING: ignoring repeated filename: " + name);
+								} else {
+									uriTextPairs.put(name, file.getValue());
+								}
+							}
+						} catch(IOException e) {
+							System.err.println("Failed to read directory: " + fileName);
+							System.exit(1);
+						}
+						continue;
+					}
 					try {
-						final Path path = Paths.get(fileName);
 						String uri = Util.mangleUri(path.toUri().toString());
 						String text = new String(Files.readAllBytes(path));
 						if(uriTextPairs.containsKey(uri)) {
@@ -258,32 +431,54 @@ public class Ariadne {
 			System.exit(-1);
 		}
 
+		// a linter sees unchanged files again in its next run; long-running
+		// modes translate incrementally instead, which bypasses the cache
+		if (cacheDir != null) {
+			TranslatedModuleCache.setEnabled(true);
+			TranslatedModuleCache.setDirectory(cacheDir);
+		}
+		IncrementalTranslation.setEnabled(mode != MODE.linter);
+		PythonDriver.setBackgroundAnalysis(mode != MODE.linter);
+
+		final AnalysisBudget analysisBudget = budget;
+		final boolean analysisCompactSets = compactSets;
+		final Function<WALAServer, Function<String, AbstractAnalysisEngine<InstanceKey, ? extends PropagationCallGraphBuilder, ?>>> python = PythonDriver.python((PythonAnalysisEngine<?> engine) -> {
+			engine.setBudget(analysisBudget);
+			engine.setCompactPointsToSets(analysisCompactSets);
+			for(PythonSummaryBundle bundle : bundles) {
+				engine.addSummaryBundle(bundle);
+			}
+		});
+		if (mode != MODE.linter) {
+			PythonInterpreterPool.prewarm(1);
+		}
+
 		switch(mode) {
 		case stdio: {
-			WALAServer.launchOnStdio(PythonDriver.python);
+			WALAServer.launchOnStdio(python);
 			break;
 		}
 		case client: {
-			final WALAServer server = WALAServer.launchOnClientPort(null, port, PythonDriver.python);
+			final WALAServer server = WALAServer.launchOnClientPort(null, port, python);
 			break;
 		}
 		case server: {
 			final WALAServer server = 
-					WALAServer.launchOnServerPort(port, PythonDriver.python, false);
+					WALAServer.launchOnServerPort(port, python, false);
 			final Integer actualPort = server.getServerPort();
 			System.err.println("Server up, listening on port: " + actualPort);
 			break;
 		}
 		case daemon: {
 			final WALAServer server = 
-					WALAServer.launchOnServerPort(port, PythonDriver.python, true);
+					WALAServer.launchOnServerPort(port, python, true);
 			final Integer actualPort = server.getServerPort();
 			System.err.println("Server up, listening on port: " + actualPort);
 			break;
 		}
 		case linter: {
 			if(! uriTextPairs.isEmpty()) {
-				Map<String, List<Diagnostic>> diagnostics = PythonDriver.getDiagnostics(uriTextPairs);
+				Map<String, List<Diagnostic>> diagnostics = PythonDriver.getDiagnostics(python, uriTextPairs);
 				if(diagnostics == null) {
 					System.err.println("There was an error generating diagnostics");
 					System.exit(1);
@@ -291,6 +486,13 @@ public class Ariadne {
 				Map<String, List<Diagnostic>> filteredDiagnostics = DiagnosticsFormatter.filterSeverity(diagnostics, severityList);
 				format.print(System.out, uriTextPairs, filteredDiagnostics, related);
 			}
+			if(metrics != null) {
+				try {
+					Files.write(metricsPath, metrics.toString().getBytes());
+				} catch(IOException e) {
+					System.err.println("Failed to write metrics: " + metricsPath);
+				}
+			}
 			break;
 		}
 		}
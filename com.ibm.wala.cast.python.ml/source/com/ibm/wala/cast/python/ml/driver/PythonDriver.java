@@ -11,20 +11,34 @@
  *****************************************************************************/
 package com.ibm.wala.cast.python.ml.driver;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.eclipse.lsp4j.Diagnostic;
 
 import com.ibm.wala.cast.loader.AstMethod;
+import com.ibm.wala.cast.lsp.AnalysisError;
 import com.ibm.wala.cast.lsp.WALAServer;
+import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
 import com.ibm.wala.cast.python.ml.analysis.PandasReadExcelAnalysis;
 import com.ibm.wala.cast.python.ml.analysis.TensorTypeAnalysis;
 import com.ibm.wala.cast.python.ml.analysis.TensorVariable;
 import com.ibm.wala.cast.python.ml.client.PythonTensorAnalysisEngine;
+import com.ibm.wala.cast.python.util.AnalysisBudget;
 import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IMethod;
@@ -42,7 +56,9 @@ import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.types.TypeName;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.NullProgressMonitor;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
 
 public class PythonDriver {
 
@@ -54,6 +70,10 @@ public class PythonDriver {
 		return getDiagnostics("python", uriTextPairs);
 	}
 
+	public static Map<String, List<Diagnostic>> getDiagnostics(Function<WALAServer, Function<String, AbstractAnalysisEngine<InstanceKey, ? extends PropagationCallGraphBuilder, ?>>> driver, Map<String,String> uriTextPairs) {
+		return WALAServer.getDiagnostics(driver, "python", uriTextPairs);
+	}
+
 	private static String getTypeNameString(TypeName typ) {
 		String str = typ.toString();
 		if(str.startsWith("L")) {
@@ -62,9 +82,89 @@ public class PythonDriver {
 		str = str.replaceAll("/", ".");
 		return str;
 	}
-	public static final Function<WALAServer, Function<String, AbstractAnalysisEngine<InstanceKey, ? extends PropagationCallGraphBuilder, ?>>> python = (WALAServer lsp) -> {
-		return (String language) -> {
+
+	private static boolean backgroundAnalysis = false;
+
+	/**
+	 * when an analysis runs out of its budget, answer queries from what it
+	 * found, and meanwhile run it again without a budget in the background,
+	 * answering from that once it is done
+	 */
+	public static void setBackgroundAnalysis(boolean background) {
+		backgroundAnalysis = background;
+	}
+
+	/**
+	 * the analyses of one server: which is the newest, whether its answers
+	 * are partial, and the one running in the background, if any
+	 */
+	private static class Analyses {
+		private final AtomicLong generation = new AtomicLong();
+
+		private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), (Runnable r) -> {
+			Thread t = new Thread(r, "background analysis");
+			t.setDaemon(true);
+			return t;
+		});
+
+		private Future<?> background;
+
+		private volatile boolean partialResults = false;
+
+		private Analyses() {
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		private synchronized void analyzeInBackground(Callable<Void> analysis) {
+			background = executor.submit(analysis);
+		}
+
+		private synchronized Future<?> getBackground() {
+			return background;
+		}
+	}
+
+	private static final Map<WALAServer, Analyses> servers = new WeakHashMap<>();
+
+	private static Analyses analyses(WALAServer lsp) {
+		synchronized (servers) {
+			Analyses a = servers.get(lsp);
+			if (a == null) {
+				servers.put(lsp, a = new Analyses());
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * @return whether the given server answers queries from an analysis
+	 * that ran out of its budget
+	 */
+	public static boolean hasPartialResults(WALAServer lsp) {
+		return analyses(lsp).partialResults;
+	}
+
+	/**
+	 * wait for the given server's background analysis, if any, to finish
+	 *
+	 * @throws ExecutionException if the background analysis failed
+	 */
+	public static void awaitBackgroundAnalysis(WALAServer lsp) throws InterruptedException, ExecutionException {
+		Future<?> current = analyses(lsp).getBackground();
+		if (current != null) {
+			current.get();
+		}
+	}
+
+	/**
+	 * analyze with engines that the given settings are applied to
+	 */
+	public static Function<WALAServer, Function<String, AbstractAnalysisEngine<InstanceKey, ? extends PropagationCallGraphBuilder, ?>>> python(Consumer<PythonAnalysisEngine<?>> settings) {
+		return (WALAServer lsp) -> (String language) -> {
 			assert "python".equals(language) : language;
+			Analyses state = analyses(lsp);
+			AtomicLong generation = state.generation;
+			long current = generation.incrementAndGet();
 			PythonTensorAnalysisEngine engine = new PythonTensorAnalysisEngine() {
 
 				@Override
@@ -72,6 +172,52 @@ public class PythonDriver {
 						PropagationCallGraphBuilder builder) throws CancelException {
 
 					TensorTypeAnalysis tt = super.performAnalysis(builder);
+					shutdown();
+
+					publish(builder, tt, getErrors(), isPartial());
+
+					if (backgroundAnalysis && isPartial()) {
+						state.analyzeInBackground(() -> {
+							PythonTensorAnalysisEngine full = new PythonTensorAnalysisEngine();
+							full.copySettings(this);
+							full.setBudget(AnalysisBudget.UNLIMITED);
+							full.setModuleFiles(moduleFiles);
+							try {
+								PropagationCallGraphBuilder fullBuilder = (PropagationCallGraphBuilder) full.defaultCallGraphBuilder();
+								fullBuilder.makeCallGraph(full.getOptions(), new NullProgressMonitor() {
+									@Override
+									public boolean isCanceled() {
+										return generation.get() != current;
+									}
+								});
+								if (generation.get() == current) {
+									publish(fullBuilder, full.performAnalysis(fullBuilder), full.getErrors(), false);
+								}
+							} catch (CancelException e) {
+								// superseded by a newer analysis
+							} catch (IOException | RuntimeException e) {
+								System.err.println("Background analysis failed: " + e);
+								e.printStackTrace();
+								throw e;
+							} finally {
+								full.shutdown();
+							}
+							return null;
+						});
+					}
+
+					return tt;
+				}
+
+				/**
+				 * work out the answers to queries off the server's threads, and
+				 * only then swap them in, under the server's lock, unless a newer
+				 * analysis has started meanwhile
+				 */
+				private void publish(PropagationCallGraphBuilder builder, TensorTypeAnalysis tt, Map<PointerKey, AnalysisError> errors, boolean partial) {
+					List<Pair<Position, int[]>> instructions = new ArrayList<>();
+					List<Pair<Position, PointerKey>> values = new ArrayList<>();
+					List<Consumer<WALAServer>> analyses = new ArrayList<>();
 
 					CallGraph CG = builder.getCallGraph();
 					PointerAnalysis<InstanceKey> PA = builder.getPointerAnalysis();
@@ -85,13 +231,13 @@ public class PythonDriver {
 								if (inst.iindex != -1) {
 									Position pos = ((AstMethod)M).debugInfo().getInstructionPosition(inst.iindex);
 									if (pos != null) {
-										lsp.add(pos, new int[] {CG.getNumber(n), inst.iindex});
+										instructions.add(Pair.make(pos, new int[] {CG.getNumber(n), inst.iindex}));
 									}
 									if (inst.hasDef()) {
 										PointerKey v = H.getPointerKeyForLocal(n, inst.getDef());
 										if (M instanceof AstMethod) {
 											if (pos != null) {
-												lsp.add(pos, v);
+												values.add(Pair.make(pos, v));
 											}
 										}
 									}
@@ -100,7 +246,7 @@ public class PythonDriver {
 						}
 					});
 
-					lsp.addValueAnalysis("type", builder.getPointerAnalysis().getHeapGraph(), (Boolean useMarkdown, PointerKey v) -> {
+					analyses.add(s -> s.addValueAnalysis("type", builder.getPointerAnalysis().getHeapGraph(), (Boolean useMarkdown, PointerKey v) -> {
 						if (builder.getPropagationSystem().isImplicit(v)) {
 							return null;
 						} else {
@@ -113,9 +259,9 @@ public class PythonDriver {
 								return null;
 							}
 						}
-					});
+					}));
 
-					lsp.addInstructionAnalysis("target", (Boolean useMarkdown, int[] instId) -> {
+					analyses.add(s -> s.addInstructionAnalysis("target", (Boolean useMarkdown, int[] instId) -> {
 						CGNode node = builder.getCallGraph().getNode(instId[0]);
 						SSAInstruction[] insts = node.getIR().getInstructions();
 						if (insts.length > instId[1]) {
@@ -146,9 +292,9 @@ public class PythonDriver {
 							}
 						}
 						return null;
-					});	
+					}));	
 					
-					lsp.setFindDefinitionAnalysis((int[] instId) -> {
+					analyses.add(s -> s.setFindDefinitionAnalysis((int[] instId) -> {
 						CGNode node = builder.getCallGraph().getNode(instId[0]);
 						SSAInstruction inst = node.getIR().getInstructions()[instId[1]];
 						if (inst instanceof SSAAbstractInvokeInstruction) {
@@ -175,12 +321,12 @@ public class PythonDriver {
 						} else {
 							return null;
 						}
-					});	
+					}));	
 					
-					lsp.addValueErrors(language, this.getErrors());
+					analyses.add(s -> s.addValueErrors(language, errors));
 					
 					Map<InstanceKey, Set<String>> excelReads = PandasReadExcelAnalysis.readExcelAnalysis(CG, PA, H);
-					lsp.addValueAnalysis("columns", builder.getPointerAnalysis().getHeapGraph(), (Boolean useMarkdown, PointerKey v) -> {
+					analyses.add(s -> s.addValueAnalysis("columns", builder.getPointerAnalysis().getHeapGraph(), (Boolean useMarkdown, PointerKey v) -> {
 						Set<String> fields = HashSetFactory.make();
 						PA.getPointsToSet(v).forEach((InstanceKey o) -> {
 							if (excelReads.containsKey(o)) {
@@ -192,13 +338,29 @@ public class PythonDriver {
 						} else {
 							return fields.toString();
 						}
-					});
+					}));
 					
-					return tt;
+					synchronized (lsp) {
+						if (generation.get() == current) {
+							for(Pair<Position, int[]> i : instructions) {
+								lsp.add(i.fst, i.snd);
+							}
+							for(Pair<Position, PointerKey> v : values) {
+								lsp.add(v.fst, v.snd);
+							}
+							for(Consumer<WALAServer> a : analyses) {
+								a.accept(lsp);
+							}
+							state.partialResults = partial;
+						}
+					}
 				}	
 			};
+			settings.accept(engine);
 
 			return engine;
 		};
-	};
+	}
+
+	public static final Function<WALAServer, Function<String, AbstractAnalysisEngine<InstanceKey, ? extends PropagationCallGraphBuilder, ?>>> python = python((PythonAnalysisEngine<?> engine) -> { });
 }
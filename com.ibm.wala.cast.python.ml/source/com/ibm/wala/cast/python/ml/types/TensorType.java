@@ -17,17 +17,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 
-import org.python.core.PyObject;
-
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.ibm.wala.cast.loader.AstMethod;
 import com.ibm.wala.cast.python.ml.types.TensorType.Dimension;
+import com.ibm.wala.cast.python.parser.PythonSourcePosition;
 import com.ibm.wala.cast.python.ssa.PythonPropertyWrite;
 import com.ibm.wala.cast.python.util.PythonUtil;
 import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
-import com.ibm.wala.cast.util.SourceBuffer;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ssa.DefUse;
 import com.ibm.wala.ssa.SSAInstruction;
@@ -370,13 +368,12 @@ public class TensorType implements Iterable<Dimension<?>> {
 					Position p = ((AstMethod)node.getMethod()).debugInfo().getInstructionPosition(du.getDef(val).iindex);
 					System.err.println(p);
 					try {
-						SourceBuffer b = new SourceBuffer(p);
-						String expr = b.toString();
+						String expr = PythonSourcePosition.getText(p);
 						System.err.println(expr);
-						PyObject value = PythonUtil.getInterp().eval(expr);
+						Object value = PythonUtil.evalConstant(expr);
 						System.err.println(value);
-						if (value.isInteger() ) {
-							r.add(new NumericDim(value.asInt()));
+						if (value instanceof Integer || value instanceof Long) {
+							r.add(new NumericDim(((Number)value).intValue()));
 							continue;
 						}
 					} catch (IOException e) {
@@ -0,0 +1,4 @@
+import numpy
+
+a = numpy.zeros(3)
+b = numpy.identity(a)
@@ -0,0 +1,8 @@
+def f():
+	return 1
+
+def g():
+	return 2
+
+l = [f, g]
+l[-1]()
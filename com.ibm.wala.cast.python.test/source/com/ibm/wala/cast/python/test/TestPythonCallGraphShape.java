@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Set;
 
 import com.ibm.wala.cast.ipa.callgraph.CAstCallGraphUtil;
@@ -77,6 +78,21 @@ public abstract class TestPythonCallGraphShape extends TestCallGraphShape {
 		return makeEngine(name).buildDefaultCallGraph();
 	}
 	
+	/**
+	 * the edges of a call graph, as strings that do not depend on the
+	 * numbering of its nodes
+	 */
+	protected Set<String> edges(CallGraph CG) {
+		Set<String> edges = HashSetFactory.make();
+		for(CGNode n : CG) {
+			for(Iterator<CGNode> ss = CG.getSuccNodes(n); ss.hasNext(); ) {
+				CGNode s = ss.next();
+				edges.add(n.getMethod().getSignature() + " " + n.getContext() + " -> " + s.getMethod().getSignature() + " " + s.getContext());
+			}
+		}
+		return edges;
+	}
+
 	StringBuffer dump(CallGraph CG) {
 		StringBuffer sb = new StringBuffer();
 		for(CGNode n : CG) {
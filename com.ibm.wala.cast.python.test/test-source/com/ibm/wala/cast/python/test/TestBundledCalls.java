@@ -0,0 +1,54 @@
+package com.ibm.wala.cast.python.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle;
+import com.ibm.wala.cast.python.util.PyiSummaryGenerator;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+public class TestBundledCalls extends TestPythonCallGraphShape {
+
+	private static final String numpy =
+		"from typing import TypeVar\n" +
+		"T = TypeVar('T')\n" +
+		"\n" +
+		"class ndarray(object):\n" +
+		"    def reshape(self, *shape: int) -> ndarray: ...\n" +
+		"\n" +
+		"def zeros(shape: int) -> ndarray: ...\n" +
+		"def identity(x: T) -> T: ...\n";
+
+	protected static final Object[][] assertionsBundled = new Object[][] {
+		new Object[] { ROOT, new String[] { "script bundled.py" } },
+		new Object[] {
+			"script bundled.py",
+			new String[] { "numpy/functions/zeros", "numpy/functions/identity" } }
+	};
+
+	@Test
+	public void testBundled() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		Path bundle = Files.createTempFile("numpy", ".bundle");
+		try {
+			try (OutputStream out = Files.newOutputStream(bundle)) {
+				PythonSummaryBundle.write(Collections.singletonList(PyiSummaryGenerator.parse("numpy", numpy)), out);
+			}
+			PythonAnalysisEngine<?> e = makeEngine("bundled.py");
+			e.addSummaryBundle(bundle);
+
+			CallGraph CG = e.buildDefaultCallGraph();
+			verifyGraphAssertions(CG, assertionsBundled);
+		} finally {
+			Files.delete(bundle);
+		}
+	}
+
+}
@@ -1,17 +1,31 @@
 package com.ibm.wala.cast.python.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
 import java.util.Collections;
 
+import org.json.JSONObject;
 import org.junit.Test;
 
 import com.ibm.wala.cast.ipa.callgraph.CAstCallGraphUtil;
 import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
+import com.ibm.wala.cast.python.ipa.callgraph.CountingCallGraphMetrics;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonSSAPropagationCallGraphBuilder;
+import com.ibm.wala.cast.python.util.AnalysisBudget;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.propagation.SSAContextInterpreter;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.TypeName;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.NullProgressMonitor;
 
 public class TestCalls extends TestPythonCallGraphShape {
 
@@ -40,6 +54,68 @@ public class TestCalls extends TestPythonCallGraphShape {
 		verifyGraphAssertions(CG, assertionsCalls1);
 	}
 
+	@Test
+	public void testCalls1NoLibraryClasses() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		CallGraph CG = process("calls1.py");
+		IClassHierarchy cha = CG.getClassHierarchy();
+		assertNull(cha.getLoader(cha.getScope().getSyntheticLoader()).lookupClass(TypeName.findOrCreate("Lpandas")));
+	}
+
+	@Test
+	public void testCalls1Selective() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> e = makeEngine("calls1.py");
+		e.setContextBudget(2);
+		CallGraph CG = e.buildDefaultCallGraph();
+		verifyGraphAssertions(CG, assertionsCalls1);
+	}
+
+	@Test
+	public void testCalls1SameEngineTwice() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> e = makeEngine("calls1.py");
+		CallGraph first = e.buildDefaultCallGraph();
+		CallGraph second = e.buildDefaultCallGraph();
+		assertSame(first.getClassHierarchy(), second.getClassHierarchy());
+		verifyGraphAssertions(second, assertionsCalls1);
+		assertEquals(edges(first), edges(second));
+	}
+
+	@Test
+	public void testCalls1Budget() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> e = makeEngine("calls1.py");
+		e.setBudget(new AnalysisBudget(-1, 0, -1));
+		PythonSSAPropagationCallGraphBuilder builder = (PythonSSAPropagationCallGraphBuilder) e.defaultCallGraphBuilder();
+		CallGraph CG = builder.makeCallGraph(e.getOptions(), new NullProgressMonitor());
+		assertTrue(builder.isPartial());
+		assertNotNull(CG);
+
+		builder.setBudget(AnalysisBudget.UNLIMITED);
+		builder.makeCallGraph(e.getOptions(), new NullProgressMonitor());
+		assertFalse(builder.isPartial());
+	}
+
+	@Test
+	public void testCalls1PrefetchedIR() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		CallGraph sequential = process("calls1.py", "calls2.py");
+		PythonSSAPropagationCallGraphBuilder.setIRPrefetchThreads(4);
+		PythonAnalysisEngine<?> e = makeEngine("calls1.py", "calls2.py");
+		try {
+			CallGraph CG = e.buildDefaultCallGraph();
+			assertEquals(edges(sequential), edges(CG));
+		} finally {
+			PythonSSAPropagationCallGraphBuilder.setIRPrefetchThreads(1);
+			e.shutdown();
+		}
+	}
+
+	@Test
+	public void testCalls1CompactSets() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		CallGraph standard = process("calls1.py", "calls2.py");
+		PythonAnalysisEngine<?> e = makeEngine("calls1.py", "calls2.py");
+		e.setCompactPointsToSets(true);
+		CallGraph CG = e.buildDefaultCallGraph();
+		assertEquals(edges(standard), edges(CG));
+	}
+
 	 protected static final Object[][] assertionsCalls2 = new Object[][] {
 		    new Object[] { ROOT, new String[] { "script calls2.py" } },
 		    new Object[] {
@@ -61,6 +137,23 @@ public class TestCalls extends TestPythonCallGraphShape {
 		CallGraph CG = process("calls2.py");
 		verifyGraphAssertions(CG, assertionsCalls2);
 	}
+
+	@Test
+	public void testCalls2Metrics() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		CountingCallGraphMetrics metrics = new CountingCallGraphMetrics();
+		PythonSSAPropagationCallGraphBuilder.setMetrics(metrics);
+		try {
+			CallGraph CG = process("calls2.py");
+			verifyGraphAssertions(CG, assertionsCalls2);
+		} finally {
+			PythonSSAPropagationCallGraphBuilder.setMetrics(null);
+		}
+		JSONObject json = metrics.toJSON();
+		assertTrue(json.getLong("callEdges") > 0);
+		assertTrue(json.getLong("trampolines") > 0);
+		assertTrue(json.getLong("rounds") > 0);
+		assertTrue(json.getJSONArray("slowestFiles").length() > 0);
+	}
 	
 	 protected static final Object[][] assertionsCalls3 = new Object[][] {
 		    new Object[] { ROOT, new String[] { "script calls3.py" } },
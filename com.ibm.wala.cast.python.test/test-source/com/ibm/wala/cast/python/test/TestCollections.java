@@ -4,6 +4,9 @@ import java.io.IOException;
 
 import org.junit.Test;
 
+import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonContainerPointerKeys;
+import com.ibm.wala.cast.python.types.PythonTypes;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.util.CancelException;
@@ -16,6 +19,45 @@ public class TestCollections extends TestPythonCallGraphShape {
 		System.err.println(CG);
 		//verifyGraphAssertions(CG, assertionsCalls1);
 	}
+
+	 protected static final Object[][] assertionsSmashed = new Object[][] {
+		    new Object[] { ROOT, new String[] { "script containers.py" } },
+		    new Object[] {
+		        "script containers.py",
+		        new String[] { "script containers.py/f", "script containers.py/g" } }
+	 };
+
+	@Test
+	public void testSmashed() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> e = makeEngine("containers.py");
+		e.setContainerModel(PythonTypes.dict, PythonContainerPointerKeys.Model.SMASHED);
+		CallGraph CG = e.buildDefaultCallGraph();
+		verifyGraphAssertions(CG, assertionsSmashed);
+	}
+
+	 protected static final Object[][] assertionsIndices = new Object[][] {
+		    new Object[] { ROOT, new String[] { "script indices.py" } },
+		    new Object[] {
+		        "script indices.py",
+		        new String[] { "script indices.py/g" } }
+	 };
+
+	@Test
+	public void testIndexed() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> e = makeEngine("indices.py");
+		e.setContainerModel(PythonTypes.list, PythonContainerPointerKeys.Model.INDEXED);
+		CallGraph CG = e.buildDefaultCallGraph();
+		verifyGraphAssertions(CG, assertionsIndices);
+	}
+
+	@Test
+	public void testSmallConstant() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> e = makeEngine("indices.py");
+		e.setContainerModel(PythonTypes.list, PythonContainerPointerKeys.Model.SMALL_CONSTANT);
+		e.setContainerIndexCap(2);
+		CallGraph CG = e.buildDefaultCallGraph();
+		verifyGraphAssertions(CG, assertionsIndices);
+	}
 	
 
 }
@@ -0,0 +1,59 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.loader.PythonConstantFolder;
+import com.ibm.wala.cast.tree.impl.CAstOperator;
+
+public class TestConstantFolder {
+
+	@Test
+	public void testInts() {
+		assertEquals(7, PythonConstantFolder.fold(CAstOperator.OP_ADD, 3L, 4L));
+		assertEquals(-4, PythonConstantFolder.fold(CAstOperator.OP_DIV, -7L, 2L));
+		assertEquals(1, PythonConstantFolder.fold(CAstOperator.OP_MOD, -7L, 2L));
+		assertEquals(1024, PythonConstantFolder.fold(CAstOperator.OP_POW, 2L, 10L));
+		assertEquals(0.5, PythonConstantFolder.fold(CAstOperator.OP_POW, 2L, -1L));
+		assertEquals(1L << 40, PythonConstantFolder.fold(CAstOperator.OP_MUL, 1L << 20, 1L << 20));
+		assertNull(PythonConstantFolder.fold(CAstOperator.OP_MUL, Long.MAX_VALUE, 2L));
+		assertNull(PythonConstantFolder.fold(CAstOperator.OP_DIV, 1L, 0L));
+	}
+
+	@Test
+	public void testTrueDivision() {
+		PythonConstantFolder.setTrueDivision(true);
+		try {
+			assertEquals(3.5, PythonConstantFolder.fold(CAstOperator.OP_DIV, 7L, 2L));
+		} finally {
+			PythonConstantFolder.setTrueDivision(false);
+		}
+	}
+
+	@Test
+	public void testFloats() {
+		assertEquals(1.5, PythonConstantFolder.fold(CAstOperator.OP_DIV, 3.0, 2L));
+		assertEquals(1.0, PythonConstantFolder.fold(CAstOperator.OP_MOD, -3.0, 2.0));
+		assertEquals(true, PythonConstantFolder.fold(CAstOperator.OP_LT, 1L, 1.5));
+	}
+
+	@Test
+	public void testStrings() {
+		assertEquals("abcd", PythonConstantFolder.fold(CAstOperator.OP_ADD, "ab", "cd"));
+		assertEquals("ababab", PythonConstantFolder.fold(CAstOperator.OP_MUL, "ab", 3L));
+		assertEquals("", PythonConstantFolder.fold(CAstOperator.OP_MUL, -1L, "ab"));
+		assertEquals("", PythonConstantFolder.fold(CAstOperator.OP_MUL, "", 1000000000000000000L));
+		assertNull(PythonConstantFolder.fold(CAstOperator.OP_MUL, "ab", 4611686018427387904L));
+		assertEquals(false, PythonConstantFolder.fold(CAstOperator.OP_EQ, "1", 1L));
+		assertSame(PythonConstantFolder.NOT_HANDLED, PythonConstantFolder.fold(CAstOperator.OP_MOD, "%s", "x"));
+	}
+
+	@Test
+	public void testBools() {
+		assertEquals(2, PythonConstantFolder.fold(CAstOperator.OP_ADD, true, true));
+		assertEquals(false, PythonConstantFolder.fold(CAstOperator.OP_BIT_AND, true, false));
+	}
+}
@@ -0,0 +1,98 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.parser.IncrementalTranslation;
+import com.ibm.wala.cast.python.parser.PythonModuleParser;
+import com.ibm.wala.cast.tree.CAstEntity;
+import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
+import com.ibm.wala.cast.tree.impl.CAstTypeDictionaryImpl;
+import com.ibm.wala.classLoader.SourceURLModule;
+
+public class TestIncrementalTranslation {
+
+	private static final String f = "def f(x):\n  return x\n";
+	
+	private static final String g = "def g(y):\n  return y\n";
+
+	private File file;
+	
+	@Before
+	public void setUp() throws IOException {
+		IncrementalTranslation.setEnabled(true);
+		file = File.createTempFile("incremental", ".py");
+	}
+	
+	@After
+	public void tearDown() {
+		IncrementalTranslation.setEnabled(false);
+		file.delete();
+	}
+	
+	private CAstEntity translate(String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return new PythonModuleParser(new SourceURLModule(file.toURI().toURL()), new CAstTypeDictionaryImpl<String>()).translateToCAst();
+	}
+	
+	private static CAstEntity function(CAstEntity script, String name) {
+		for(Collection<CAstEntity> es : script.getAllScopedEntities().values()) {
+			for(CAstEntity e : es) {
+				if (name.equals(e.getName())) {
+					return e;
+				}
+			}
+		}
+		throw new AssertionError("no function " + name);
+	}
+	
+	@Test
+	public void testUnchangedIsReused() throws IOException {
+		CAstEntity before = translate(f + g);
+		CAstEntity after = translate(f + g);
+		assertSame(function(before, "f"), function(after, "f"));
+		assertSame(function(before, "g"), function(after, "g"));
+	}
+	
+	@Test
+	public void testEditIsTranslated() throws IOException {
+		CAstEntity before = translate(f + g);
+		CAstEntity after = translate(f + g.replace("return y", "return y + 1"));
+		assertSame(function(before, "f"), function(after, "f"));
+		assertNotSame(function(before, "g"), function(after, "g"));
+	}
+
+	@Test
+	public void testMovedIsTranslatedAgain() throws IOException {
+		CAstEntity before = translate(f + g);
+		CAstEntity oldG = function(before, "g");
+		Position oldPosition = oldG.getPosition();
+		assertEquals(3, oldPosition.getFirstLine());
+		
+		String added = "x = 1\n";
+		CAstEntity after = translate(added + f + g);
+		CAstEntity newG = function(after, "g");
+		assertNotSame(oldG, newG);
+		assertEquals(4, newG.getPosition().getFirstLine());
+		assertEquals(oldPosition.getFirstOffset() + added.length(), newG.getPosition().getFirstOffset());
+		
+		// what the earlier translation handed out is left where it was
+		assertEquals(3, oldPosition.getFirstLine());
+		assertEquals(3, oldG.getPosition().getFirstLine());
+		
+		// and the moved block is reused from where it is now
+		CAstEntity again = translate(added + f + g);
+		assertSame(newG, function(again, "g"));
+	}
+}
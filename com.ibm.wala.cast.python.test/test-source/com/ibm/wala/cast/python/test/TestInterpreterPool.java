@@ -0,0 +1,49 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.python.util.PythonInterpreter;
+
+import com.ibm.wala.cast.python.util.PythonInterpreterPool;
+
+public class TestInterpreterPool {
+
+	@Test
+	public void testReleasedInterpreterIsReused() {
+		// empty the pool, whatever earlier users left in it
+		List<PythonInterpreter> borrowed = new ArrayList<>();
+		for(int i = 0; i <= Runtime.getRuntime().availableProcessors(); i++) {
+			borrowed.add(PythonInterpreterPool.borrow());
+		}
+
+		PythonInterpreter interp = borrowed.remove(0);
+		PythonInterpreterPool.release(interp);
+		PythonInterpreter again = PythonInterpreterPool.borrow();
+		assertSame(interp, again);
+		
+		PythonInterpreterPool.release(again);
+		borrowed.forEach(PythonInterpreterPool::release);
+	}
+
+	@Test
+	public void testConstantsAreMemoized() {
+		assertEquals(6, PythonInterpreterPool.evalConstant("2 * 3 + 0"));
+		int evaluations = PythonInterpreterPool.getEvaluationCount();
+		assertEquals(6, PythonInterpreterPool.evalConstant("2 * 3 + 0"));
+		assertEquals(evaluations, PythonInterpreterPool.getEvaluationCount());
+	}
+
+	@Test
+	public void testFailuresAreMemoized() {
+		assertNull(PythonInterpreterPool.evalConstant("num_input * 2"));
+		int evaluations = PythonInterpreterPool.getEvaluationCount();
+		assertNull(PythonInterpreterPool.evalConstant("num_input * 2"));
+		assertEquals(evaluations, PythonInterpreterPool.getEvaluationCount());
+	}
+}
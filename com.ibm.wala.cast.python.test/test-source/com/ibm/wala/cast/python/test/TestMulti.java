@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import org.junit.Test;
 
+import com.ibm.wala.cast.python.client.PythonAnalysisEngine;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.util.CancelException;
@@ -19,5 +20,13 @@ public class TestMulti extends TestPythonCallGraphShape {
 		CallGraph CG = process("calls1.py", "calls2.py");
 		verifyGraphAssertions(CG, assertionsCalls1);
 	}
+
+	@Test
+	public void testCalls1Parallel() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		PythonAnalysisEngine<?> E = makeEngine("calls1.py", "calls2.py");
+		E.setFrontEndParallelism(2);
+		CallGraph CG = E.buildDefaultCallGraph();
+		verifyGraphAssertions(CG, assertionsCalls1);
+	}
 	
 }
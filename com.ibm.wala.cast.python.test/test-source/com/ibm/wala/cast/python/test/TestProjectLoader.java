@@ -0,0 +1,47 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.util.PythonProjectLoader;
+
+public class TestProjectLoader {
+
+	private static void write(Path root, String file, String text) throws IOException {
+		Path p = root.resolve(file);
+		Files.createDirectories(p.getParent());
+		Files.write(p, text.getBytes());
+	}
+
+	@Test
+	public void testIgnoreFiles() throws IOException {
+		Path root = Files.createTempDirectory("project");
+		try {
+			for(String f : new String[] { "a.py", "b.txt", "d/c.py", "d/gen/x.py", "d/keep.py", "venv/lib/y.py", "build/z.py" }) {
+				write(root, f, "x = 1\n");
+			}
+			write(root, ".gitignore", "venv/\n/build\n");
+			write(root, "d/.gitignore", "gen\n*.py\n!keep.py\n");
+
+			PythonProjectLoader project = new PythonProjectLoader(root);
+			assertEquals(
+				Arrays.asList("a.py", "d/keep.py"),
+				project.readFiles().keySet().stream().map((p) -> project.getRoot().relativize(p).toString().replace('\\', '/')).collect(Collectors.toList()));
+
+			assertEquals(1, new PythonProjectLoader(root).exclude("d/**").loadModules().size());
+		} finally {
+			try (Stream<Path> files = Files.walk(root)) {
+				files.sorted(Comparator.reverseOrder()).forEach((p) -> p.toFile().delete());
+			}
+		}
+	}
+}
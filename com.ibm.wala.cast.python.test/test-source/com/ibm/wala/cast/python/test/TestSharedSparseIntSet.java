@@ -0,0 +1,80 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.util.CompactIntSet;
+import com.ibm.wala.cast.python.util.CompactIntSetFactory;
+import com.ibm.wala.cast.python.util.SharedSparseIntSet;
+import com.ibm.wala.cast.python.util.SharedSparseIntSetFactory;
+
+public class TestSharedSparseIntSet {
+
+	@Test
+	public void testCopyOnWrite() {
+		SharedSparseIntSetFactory f = new SharedSparseIntSetFactory();
+		SharedSparseIntSet a = f.make(new int[] { 3, 1, 3, 2 });
+		assertEquals(3, a.size());
+
+		SharedSparseIntSet b = f.makeCopy(a);
+		assertTrue(b.add(9));
+		assertFalse(a.contains(9));
+		assertFalse(b.add(9));
+
+		a.copySet(b);
+		assertTrue(a.remove(1));
+		assertTrue(b.contains(1));
+		assertEquals(3, a.size());
+		assertEquals(4, b.size());
+	}
+
+	@Test
+	public void testRemoveAllCopiesFirst() {
+		SharedSparseIntSetFactory f = new SharedSparseIntSetFactory();
+		SharedSparseIntSet a = f.make(new int[] { 1, 2, 3 });
+		SharedSparseIntSet b = f.makeCopy(a);
+
+		assertTrue(b.removeAll(f.make(new int[] { 1, 3 })));
+		assertEquals(1, b.size());
+		assertEquals(3, a.size());
+		assertTrue(a.contains(1));
+		assertTrue(a.contains(3));
+	}
+
+	@Test
+	public void testIntern() {
+		SharedSparseIntSetFactory f = new SharedSparseIntSetFactory();
+		SharedSparseIntSet a = f.make(new int[] { 5, 7 });
+		SharedSparseIntSet b = f.make();
+		b.add(7);
+		b.add(5);
+		assertTrue(a.sharesElementsWith(b));
+
+		assertTrue(b.addAll(f.make(new int[] { 6 })));
+		assertFalse(a.sharesElementsWith(b));
+		assertTrue(a.sameValue(f.make(new int[] { 5, 7 })));
+		assertEquals(3, b.size());
+	}
+
+	@Test
+	public void testOutgrowArray() {
+		CompactIntSetFactory f = new CompactIntSetFactory(4);
+		CompactIntSet s = f.make();
+		for(int i = 0; i < 4; i++) {
+			s.add(3 * i);
+		}
+		assertFalse(s.isBitVector());
+
+		assertTrue(s.add(100));
+		assertTrue(s.isBitVector());
+		assertEquals(5, s.size());
+		assertTrue(s.contains(9));
+
+		CompactIntSet t = f.makeCopy(s);
+		assertTrue(t.isBitVector());
+		assertTrue(t.sameValue(s));
+	}
+}
@@ -0,0 +1,53 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.parser.PythonSourcePosition;
+import com.ibm.wala.cast.python.parser.SourceText;
+
+public class TestSourceText {
+
+	private static final String text = "x = 1\ny = f(x,\n      2)\n";
+
+	@Test
+	public void testLines() throws IOException {
+		SourceText t = SourceText.read(new StringReader(text));
+		assertEquals(4, t.getLineCount());
+		assertEquals(1, t.getLine(0));
+		assertEquals(2, t.getLine(6));
+		assertEquals(3, t.getLine(text.indexOf("2)")));
+		assertEquals(6, t.getColumn(text.indexOf("2)")));
+	}
+
+	@Test
+	public void testPosition() throws IOException {
+		SourceText t = SourceText.read(new StringReader(text));
+		int start = text.indexOf("f(");
+		int end = text.indexOf(")") + 1;
+		PythonSourcePosition p = new PythonSourcePosition(null, t, 2, 4, start, end);
+		assertEquals("f(x,\n      2)", PythonSourcePosition.getText(p));
+		assertEquals(3, p.getLastLine());
+		assertEquals(8, p.getLastCol());
+	}
+
+	@Test
+	public void testMap() throws IOException {
+		File f = File.createTempFile("source", ".py");
+		try {
+			Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+			SourceText t = SourceText.map(f);
+			assertEquals(text.length(), t.length());
+			assertEquals(text, t.getText(0, t.length()));
+		} finally {
+			f.delete();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.ClassSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.FunctionSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.ModuleSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.Return;
+import com.ibm.wala.cast.python.util.PyiSummaryGenerator;
+
+public class TestSummaryBundle {
+
+	private static final String stub =
+		"from typing import TypeVar, overload\n" +
+		"T = TypeVar('T')\n" +
+		"\n" +
+		"class ndarray(object):\n" +
+		"    def __init__(self, shape: int,\n" +
+		"                 dtype: str = ...) -> None: ...\n" +
+		"    @property\n" +
+		"    def shape(self) -> tuple: ...\n" +
+		"    def reshape(self, *shape: int) -> ndarray: ...\n" +
+		"    def tolist(self) -> list: ...  # a comment\n" +
+		"\n" +
+		"@overload\n" +
+		"def zeros(shape: int) -> ndarray: ...\n" +
+		"@overload\n" +
+		"def zeros(shape: int, dtype: str) -> ndarray: ...\n" +
+		"def identity(x: T) -> T: ...\n" +
+		"def seterr(all: str = ..., **kw) -> None: ...\n" +
+		"def _private() -> None: ...\n";
+
+	private static void assertFunction(FunctionSummary f, String name, Return returns, int index, String... params) {
+		assertEquals(name, f.getName());
+		assertEquals(returns, f.getReturn());
+		assertEquals(index, f.getReturnIndex());
+		assertEquals(Arrays.asList(params), f.getParameters());
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		ModuleSummary numpy = PyiSummaryGenerator.parse("numpy", stub);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PythonSummaryBundle.write(Collections.singletonList(numpy), bytes);
+		PythonSummaryBundle bundle = PythonSummaryBundle.read(ByteBuffer.wrap(bytes.toByteArray()));
+
+		assertEquals(Collections.singleton("numpy"), bundle.getModuleNames());
+		assertNull(bundle.getModule("pandas"));
+
+		ModuleSummary m = bundle.getModule("numpy");
+		assertEquals(3, m.getFunctions().size());
+		assertFunction(m.getFunctions().get(0), "identity", Return.PARAMETER, 0, "x");
+		assertFunction(m.getFunctions().get(1), "seterr", Return.NONE, -1, "all");
+		assertFunction(m.getFunctions().get(2), "zeros", Return.INSTANCE, 0, "shape");
+
+		assertEquals(1, m.getClasses().size());
+		ClassSummary ndarray = m.getClasses().get(0);
+		assertEquals("ndarray", ndarray.getName());
+		assertEquals(3, ndarray.getMethods().size());
+		assertFunction(ndarray.getMethods().get(0), "__init__", Return.NONE, -1, "shape", "dtype");
+		assertFunction(ndarray.getMethods().get(1), "reshape", Return.INSTANCE, 0);
+		assertFunction(ndarray.getMethods().get(2), "tolist", Return.OBJECT, -1);
+	}
+
+	private static void assertUnreadable(byte[] bytes) {
+		try {
+			PythonSummaryBundle.read(ByteBuffer.wrap(bytes));
+			fail("read a bad bundle");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTruncatedOrCorrupt() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PythonSummaryBundle.write(Collections.singletonList(PyiSummaryGenerator.parse("numpy", stub)), out);
+		byte[] bytes = out.toByteArray();
+
+		for(int n = 0; n < bytes.length; n++) {
+			assertUnreadable(Arrays.copyOf(bytes, n));
+		}
+
+		byte[] badReturn = bytes.clone();
+		badReturn[bytes.length - 5] = 99;
+		assertUnreadable(badReturn);
+
+		byte[] badCount = bytes.clone();
+		badCount[8] = 0x7f;
+		assertUnreadable(badCount);
+	}
+
+	@Test
+	public void testModuleNames() {
+		assertEquals("numpy", PyiSummaryGenerator.moduleName(Paths.get("numpy", "__init__.pyi")));
+		assertEquals("numpy/linalg", PyiSummaryGenerator.moduleName(Paths.get("numpy", "linalg.pyi")));
+		assertEquals("six", PyiSummaryGenerator.moduleName(Paths.get("six.pyi")));
+	}
+}
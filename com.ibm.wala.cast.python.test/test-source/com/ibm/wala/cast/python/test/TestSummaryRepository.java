@@ -0,0 +1,34 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryRepository;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+public class TestSummaryRepository extends TestPythonCallGraphShape {
+
+	@Test
+	public void testSecondEngineReusesSummaries() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		CallGraph CG = process("calls1.py");
+		verifyGraphAssertions(CG, TestCalls.assertionsCalls1);
+		int parses = PythonSummaryRepository.getParseCount();
+		assertTrue(parses > 0);
+
+		CG = process("calls1.py");
+		verifyGraphAssertions(CG, TestCalls.assertionsCalls1);
+		assertEquals(parses, PythonSummaryRepository.getParseCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingResource() {
+		PythonSummaryRepository.get(getClass().getClassLoader(), "no-such-summary.xml", null);
+	}
+
+}
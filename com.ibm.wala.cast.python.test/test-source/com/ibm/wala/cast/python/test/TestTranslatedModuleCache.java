@@ -0,0 +1,81 @@
+package com.ibm.wala.cast.python.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.ibm.wala.cast.python.loader.TranslatedModuleCache;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+public class TestTranslatedModuleCache extends TestPythonCallGraphShape {
+
+	@Test
+	public void testSecondRunTranslatesNothing() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		Path dir = Files.createTempDirectory("cast");
+		TranslatedModuleCache.setEnabled(true);
+		TranslatedModuleCache.setDirectory(dir.toFile());
+		try {
+			int before = TranslatedModuleCache.getTranslationCount();
+			CallGraph CG = process("calls1.py");
+			verifyGraphAssertions(CG, TestCalls.assertionsCalls1);
+			assertEquals(before + 1, TranslatedModuleCache.getTranslationCount());
+			assertEquals(1, dir.toFile().list().length);
+
+			// as if in a new process: only the directory is left
+			TranslatedModuleCache.clear();
+			
+			CG = process("calls1.py");
+			verifyGraphAssertions(CG, TestCalls.assertionsCalls1);
+			assertEquals(before + 1, TranslatedModuleCache.getTranslationCount());
+		} finally {
+			TranslatedModuleCache.setEnabled(false);
+			TranslatedModuleCache.setDirectory(null);
+			try (Stream<Path> files = Files.walk(dir)) {
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	@Test
+	public void testDamagedEntryIsTranslatedAgain() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+		Path dir = Files.createTempDirectory("cast");
+		TranslatedModuleCache.setEnabled(true);
+		TranslatedModuleCache.setDirectory(dir.toFile());
+		try {
+			process("calls2.py");
+			File[] entries = dir.toFile().listFiles();
+			assertEquals(1, entries.length);
+			Files.write(entries[0].toPath(), new byte[] { 1, 2, 3 });
+			TranslatedModuleCache.clear();
+
+			int before = TranslatedModuleCache.getTranslationCount();
+			CallGraph CG = process("calls2.py");
+			verifyGraphAssertions(CG, TestCalls.assertionsCalls2);
+			assertEquals(before + 1, TranslatedModuleCache.getTranslationCount());
+			assertTrue(entries[0].length() > 3);
+		} finally {
+			TranslatedModuleCache.setEnabled(false);
+			TranslatedModuleCache.setDirectory(null);
+			try (Stream<Path> files = Files.walk(dir)) {
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	@Test
+	public void testVersionIsDigestOfCode() {
+		String version = TranslatedModuleCache.getVersion();
+		assertTrue(version, version.matches("[0-9a-f]{64}"));
+		assertEquals(version, TranslatedModuleCache.getVersion());
+	}
+}
@@ -1,36 +1,47 @@
 package com.ibm.wala.cast.python.client;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.ibm.wala.cast.ipa.callgraph.AstCFAPointerKeys;
 import com.ibm.wala.cast.ipa.callgraph.AstContextInsensitiveSSAContextInterpreter;
 import com.ibm.wala.cast.ir.ssa.AstIRFactory;
-import com.ibm.wala.cast.loader.AstDynamicField;
 import com.ibm.wala.cast.python.ipa.callgraph.PythonConstructorTargetSelector;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonContainerPointerKeys;
 import com.ibm.wala.cast.python.ipa.callgraph.PythonSSAPropagationCallGraphBuilder;
 import com.ibm.wala.cast.python.ipa.callgraph.PythonScopeMappingInstanceKeys;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonSelectiveContextSelector;
 import com.ibm.wala.cast.python.ipa.callgraph.PythonTrampolineTargetSelector;
+import com.ibm.wala.cast.python.ipa.summaries.PythonBundleSummaries;
 import com.ibm.wala.cast.python.ipa.summaries.PythonComprehensionTrampolines;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryClasses;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryFields;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryRepository;
+import com.ibm.wala.cast.python.ir.PrefetchingIRFactory;
 import com.ibm.wala.cast.python.ir.PythonLanguage;
 import com.ibm.wala.cast.python.loader.PythonLoaderFactory;
+import com.ibm.wala.cast.python.loader.TranslatedModuleCache;
 import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.cast.python.util.AnalysisBudget;
+import com.ibm.wala.cast.python.util.PythonProjectLoader;
 import com.ibm.wala.cast.types.AstMethodReference;
 import com.ibm.wala.classLoader.IClass;
-import com.ibm.wala.classLoader.IClassLoader;
-import com.ibm.wala.classLoader.IField;
-import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.ModuleEntry;
-import com.ibm.wala.classLoader.SyntheticClass;
+import com.ibm.wala.classLoader.SourceModule;
 import com.ibm.wala.client.AbstractAnalysisEngine;
 import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.callgraph.ClassTargetSelector;
+import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
@@ -47,35 +58,194 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ipa.cha.SeqClassHierarchyFactory;
 import com.ibm.wala.ipa.summaries.BypassClassTargetSelector;
 import com.ibm.wala.ipa.summaries.BypassMethodTargetSelector;
-import com.ibm.wala.ipa.summaries.BypassSyntheticClassLoader;
-import com.ibm.wala.ipa.summaries.XMLMethodSummaryReader;
-import com.ibm.wala.shrikeBT.Constants;
-import com.ibm.wala.ssa.IRFactory;
 import com.ibm.wala.ssa.SSAOptions;
 import com.ibm.wala.ssa.SSAOptions.DefaultValues;
 import com.ibm.wala.ssa.SymbolTable;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.MethodReference;
-import com.ibm.wala.types.Selector;
 import com.ibm.wala.types.TypeName;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
-import com.ibm.wala.util.strings.Atom;
 
 public abstract class PythonAnalysisEngine<T>
 		extends AbstractAnalysisEngine<InstanceKey, PythonSSAPropagationCallGraphBuilder, T> {
 
+	private static final DefaultValues nullDefaults = new DefaultValues() {
+		@Override
+		public int getDefaultValue(SymbolTable symtab, int valueNumber) {
+			return symtab.getNullConstant();
+		} 
+	};
+
+	private int contextBudget = -1;
+
+	/**
+	 * give call-string contexts only to trampolines and higher-order
+	 * functions, at most the given number each; a negative budget, the
+	 * default, gives 1-CFA contexts to every call
+	 */
+	public void setContextBudget(int budget) {
+		contextBudget = budget;
+	}
+
+	private final Map<TypeReference, PythonContainerPointerKeys.Model> containerModels = HashMapFactory.make();
+
+	private int containerCap = 16;
+
+	/**
+	 * how constant indices into containers of the given type, such as
+	 * {@link PythonTypes#list} or {@link PythonTypes#dict}, are told apart;
+	 * null restores the default
+	 */
+	public void setContainerModel(TypeReference type, PythonContainerPointerKeys.Model model) {
+		if (model == null) {
+			containerModels.remove(type);
+		} else {
+			containerModels.put(type, model);
+		}
+	}
+
+	/**
+	 * the number of distinct indices that {@link PythonContainerPointerKeys.Model#SMALL_CONSTANT}
+	 * tells apart
+	 */
+	public void setContainerIndexCap(int cap) {
+		containerCap = cap;
+	}
+
+	private final List<PythonSummaryBundle> summaryBundles = new ArrayList<>();
+
+	/**
+	 * consult the given summary bundle for the modules it has, after the
+	 * XML summaries and before the trampolines and the class hierarchy
+	 */
+	public void addSummaryBundle(PythonSummaryBundle bundle) {
+		summaryBundles.add(bundle);
+	}
+
+	public void addSummaryBundle(Path bundle) throws IOException {
+		addSummaryBundle(PythonSummaryBundle.open(bundle));
+	}
+
+	private AnalysisBudget budget = AnalysisBudget.UNLIMITED;
+
+	public void setBudget(AnalysisBudget budget) {
+		this.budget = budget;
+	}
+
+	public AnalysisBudget getBudget() {
+		return budget;
+	}
+
+	private boolean compactPointsToSets = false;
+
+	/**
+	 * solve with points-to sets that share equal small contents and move
+	 * to bit vectors as they grow
+	 */
+	public void setCompactPointsToSets(boolean compact) {
+		compactPointsToSets = compact;
+	}
+
+	/**
+	 * analyze with the same settings as the given engine: its context
+	 * budget, container models, summary bundles, budget and points-to
+	 * sets
+	 */
+	public void copySettings(PythonAnalysisEngine<?> other) {
+		contextBudget = other.contextBudget;
+		containerModels.clear();
+		containerModels.putAll(other.containerModels);
+		containerCap = other.containerCap;
+		summaryBundles.clear();
+		summaryBundles.addAll(other.summaryBundles);
+		budget = other.budget;
+		compactPointsToSets = other.compactPointsToSets;
+	}
+
 	private final PythonLoaderFactory loader = new PythonLoaderFactory();
-	private final IRFactory<IMethod> irs = AstIRFactory.makeDefaultFactory();
+	private final PrefetchingIRFactory irs = new PrefetchingIRFactory(AstIRFactory.makeDefaultFactory());
+
+	private SSAOptions cacheOptions;
+
+	private PythonSummaryFields summaryFields;
+
+	/**
+	 * the scope, class hierarchy and IR cache of an analysis by this
+	 * engine, which its next analysis reuses if the modules have the same
+	 * contents
+	 */
+	private static class AnalysisState {
+		private final List<String> versions;
+		private final AnalysisScope scope;
+		private final IClassHierarchy cha;
+		private final IAnalysisCacheView cache;
+		private final SSAOptions cacheOptions;
+
+		private AnalysisState(List<String> versions, AnalysisScope scope, IClassHierarchy cha, IAnalysisCacheView cache, SSAOptions cacheOptions) {
+			this.versions = versions;
+			this.scope = scope;
+			this.cha = cha;
+			this.cache = cache;
+			this.cacheOptions = cacheOptions;
+		}
+	}
+
+	private SoftReference<AnalysisState> lastState = new SoftReference<>(null);
+	private List<String> versions;
+	private AnalysisState reused;
 
 	public PythonAnalysisEngine() {
 		super();
 	}
 
+	public void setFrontEndParallelism(int threads) {
+		loader.setParallelism(threads);
+	}
+
+	/**
+	 * stop the threads that this engine builds IR ahead with; a later
+	 * analysis starts new ones
+	 */
+	public void shutdown() {
+		irs.shutdown();
+	}
+
+	/**
+	 * analyze the modules of a project directory
+	 */
+	public void setProject(PythonProjectLoader project) throws IOException {
+		setModuleFiles(project.loadModules());
+	}
+
+	/**
+	 * @return the content versions of the modules, or null if some module
+	 * has no content to version
+	 */
+	private List<String> moduleVersions() throws IOException {
+		List<String> versions = new ArrayList<>();
+		for(Module m : moduleFiles) {
+			if (! (m instanceof SourceModule)) {
+				return null;
+			}
+			versions.add(TranslatedModuleCache.key((SourceModule)m));
+		}
+		Collections.sort(versions);
+		return versions;
+	}
+
 	@Override
 	public void buildAnalysisScope() throws IOException {
+		versions = moduleVersions();
+		AnalysisState last = lastState.get();
+		reused = last != null && versions != null && last.versions.equals(versions)? last: null;
+		if (reused != null) {
+			scope = reused.scope;
+			return;
+		}
+
 		scope = new AnalysisScope(Collections.singleton(PythonLanguage.Python)) { 
 			{
 				loadersByName.put(PythonTypes.pythonLoaderName, PythonTypes.pythonLoader);
@@ -90,6 +260,11 @@ public abstract class PythonAnalysisEngine<T>
 
 	@Override
 	public IClassHierarchy buildClassHierarchy() {
+		if (reused != null) {
+			setClassHierarchy(reused.cha);
+			return reused.cha;
+		}
+
 		try {
 			IClassHierarchy cha = SeqClassHierarchyFactory.make(scope, loader);
 			setClassHierarchy(cha);
@@ -100,123 +275,38 @@ public abstract class PythonAnalysisEngine<T>
 		}
 	}
 
-	protected void addSummaryBypassLogic(AnalysisOptions options, String summary) {
+	/**
+	 * the fields shared by the summary classes of the current class hierarchy
+	 */
+	protected synchronized PythonSummaryFields getSummaryFields() {
 		IClassHierarchy cha = getClassHierarchy();
-		XMLMethodSummaryReader xml = new XMLMethodSummaryReader(getClass().getClassLoader().getResourceAsStream(summary), scope);
-		for(TypeReference t : xml.getAllocatableClasses()) {
-			BypassSyntheticClassLoader ldr = (BypassSyntheticClassLoader) cha.getLoader(scope.getSyntheticLoader());
-			ldr.registerClass(t.getName(), new SyntheticClass(t, cha) {
-				private final Map<Atom,IField> fields = HashMapFactory.make();
-
-				@Override
-				public IClassLoader getClassLoader() {
-					return cha.getLoader(cha.getScope().getSyntheticLoader());
-				}
-	
-				@Override
-				public boolean isPublic() {
-					return true;
-				}
-	
-				@Override
-				public boolean isPrivate() {
-					return false;
-				}
-	
-				@Override
-				public int getModifiers() throws UnsupportedOperationException {
-					return Constants.ACC_PUBLIC;
-				}
-	
-				@Override
-				public IClass getSuperclass() {
-					return cha.lookupClass(PythonTypes.CodeBody);
-				}
-	
-				@Override
-				public Collection<? extends IClass> getDirectInterfaces() {
-					return Collections.emptySet();
-				}
-	
-				@Override
-				public Collection<IClass> getAllImplementedInterfaces() {
-					return Collections.emptySet();
-				}
-	
-				@Override
-				public IMethod getMethod(Selector selector) {
-					// TODO Auto-generated method stub
-					return null;
-				}
-	
-				@Override
-				public IField getField(Atom name) {
-					if (! fields.containsKey(name)) {
-						fields.put(name, new AstDynamicField(false, cha.lookupClass(PythonTypes.Root), name, PythonTypes.Root));
-					}
-					return fields.get(name);
-				}
-	
-				@Override
-				public IMethod getClassInitializer() {
-					// TODO Auto-generated method stub
-					return null;
-				}
-	
-				@Override
-				public Collection<? extends IMethod> getDeclaredMethods() {
-					// TODO Auto-generated method stub
-					return null;
-				}
-	
-				@Override
-				public Collection<IField> getAllInstanceFields() {
-					return fields.values();
-				}
-	
-				@Override
-				public Collection<IField> getAllStaticFields() {
-					return Collections.emptySet();
-				}
-	
-				@Override
-				public Collection<IField> getAllFields() {
-					return fields.values();
-				}
-	
-				@Override
-				public Collection<? extends IMethod> getAllMethods() {
-					// TODO Auto-generated method stub
-					return null;
-				}
-	
-				@Override
-				public Collection<IField> getDeclaredInstanceFields() {
-					return fields.values();
-				}
-	
-				@Override
-				public Collection<IField> getDeclaredStaticFields() {
-					return Collections.emptySet();
-				}
-	
-				@Override
-				public boolean isReferenceType() {
-					return true;
-				}				
-			});
+		if (summaryFields == null || summaryFields.getClassHierarchy() != cha) {
+			summaryFields = new PythonSummaryFields(cha);
 		}
-	
+		return summaryFields;
+	}
+
+	protected void addSummaryBypassLogic(AnalysisOptions options, String summary) {
+		IClassHierarchy cha = getClassHierarchy();
+		PythonSummaryRepository.Summaries xml = PythonSummaryRepository.get(getClass().getClassLoader(), summary, scope);
+		PythonSummaryClasses classes = new PythonSummaryClasses(getSummaryFields(), xml.getAllocatableClasses());
+
 		MethodTargetSelector targetSelector = options.getMethodTargetSelector();
 		targetSelector = new BypassMethodTargetSelector(targetSelector, xml.getSummaries(), xml.getIgnoredPackages(), cha);
-		options.setSelector(targetSelector);
+		options.setSelector(classes.registerOnDemand(targetSelector));
 	
 		ClassTargetSelector cs = 
 			new BypassClassTargetSelector(options.getClassTargetSelector(), 
 					xml.getAllocatableClasses(), 
 					cha, 
 					cha.getLoader(scope.getSyntheticLoader()));
-		options.setSelector(cs);
+		options.setSelector(classes.registerOnDemand(cs));
+	}
+
+	private void addBundleBypassLogic(AnalysisOptions options) {
+		if (! summaryBundles.isEmpty()) {
+			new PythonBundleSummaries(getSummaryFields(), new ArrayList<>(summaryBundles)).analyzeWithBundles(options);
+		}
 	}
 
 	protected void addBypassLogic(AnalysisOptions options) {
@@ -226,6 +316,8 @@ public abstract class PythonAnalysisEngine<T>
 					new PythonComprehensionTrampolines(
 						options.getMethodTargetSelector()))));
 		
+		addBundleBypassLogic(options);
+		
 		addSummaryBypassLogic(options, "pandas.xml");
 		addSummaryBypassLogic(options, "functools.xml");
 	}
@@ -247,9 +339,53 @@ public abstract class PythonAnalysisEngine<T>
 		return result;
 	}
 
+	/**
+	 * the IR cache of the last analysis if its class hierarchy is reused,
+	 * and otherwise a new one, held softly for the next analysis of the
+	 * same modules
+	 */
+	@Override
+	public IAnalysisCacheView makeDefaultCache() {
+		if (reused != null && reused.cha == getClassHierarchy()) {
+			cacheOptions = reused.cacheOptions;
+			return reused.cache;
+		}
+
+		irs.clear();
+		cacheOptions = new SSAOptions();
+		cacheOptions.setDefaultValues(nullDefaults);
+		IAnalysisCacheView cache = new AnalysisCacheImpl(irs, cacheOptions);
+		if (versions != null) {
+			lastState = new SoftReference<>(new AnalysisState(versions, scope, getClassHierarchy(), cache, cacheOptions));
+		}
+		return cache;
+	}
+
+	protected AstCFAPointerKeys makePointerKeys() {
+		PythonContainerPointerKeys keys = new PythonContainerPointerKeys();
+		for(Map.Entry<TypeReference, PythonContainerPointerKeys.Model> m : containerModels.entrySet()) {
+			keys.setModel(m.getKey(), m.getValue());
+		}
+		keys.setCap(containerCap);
+		return keys;
+	}
+
+	protected ContextSelector makeContextSelector(AnalysisOptions options, IAnalysisCacheView cache) {
+		if (contextBudget < 0) {
+			return new nCFAContextSelector(1, new ContextInsensitiveSelector());
+		} else {
+			return new PythonSelectiveContextSelector(new ContextInsensitiveSelector(), cache, contextBudget);
+		}
+	}
+
 	@Override
 	protected PythonSSAPropagationCallGraphBuilder getCallGraphBuilder(IClassHierarchy cha, AnalysisOptions options, IAnalysisCacheView cache2) {
-		IAnalysisCacheView cache = new AnalysisCacheImpl(irs, options.getSSAOptions());
+		IAnalysisCacheView cache = cache2;
+		if (cache == null) {
+			irs.clear();
+			cacheOptions = options.getSSAOptions();
+			cache = new AnalysisCacheImpl(irs, cacheOptions);
+		}
 		
 		options.setSelector(new ClassHierarchyClassTargetSelector(cha));
 		options.setSelector(new ClassHierarchyMethodTargetSelector(cha));
@@ -259,21 +395,21 @@ public abstract class PythonAnalysisEngine<T>
 		options.setUseConstantSpecificKeys(true);
 		
 		SSAOptions ssaOptions = options.getSSAOptions();
-		ssaOptions.setDefaultValues(new DefaultValues() {
-			@Override
-			public int getDefaultValue(SymbolTable symtab, int valueNumber) {
-				return symtab.getNullConstant();
-			} 
-		});
+		ssaOptions.setDefaultValues(nullDefaults);
 		options.setSSAOptions(ssaOptions);
 		
 		PythonSSAPropagationCallGraphBuilder builder = 
-			new PythonSSAPropagationCallGraphBuilder(cha, options, cache, new AstCFAPointerKeys());
+			new PythonSSAPropagationCallGraphBuilder(cha, options, cache, makePointerKeys());
+		if (cacheOptions != null) {
+			builder.setIRPrefetcher(irs, cacheOptions);
+		}
+		builder.setBudget(budget);
+		builder.setCompactPointsToSets(compactPointsToSets);
 	
 		AstContextInsensitiveSSAContextInterpreter interpreter = new AstContextInsensitiveSSAContextInterpreter(options, cache);
 		builder.setContextInterpreter(interpreter);
 	
-		builder.setContextSelector(new nCFAContextSelector(1, new ContextInsensitiveSelector()));
+		builder.setContextSelector(makeContextSelector(options, cache));
 	
 		builder.setInstanceKeys(new PythonScopeMappingInstanceKeys(builder, new ZeroXInstanceKeys(options, cha, interpreter, ZeroXInstanceKeys.ALLOCATIONS)));
 	
@@ -13,8 +13,8 @@ import org.json.JSONObject;
 
 import com.ibm.wala.cast.loader.AstMethod;
 import com.ibm.wala.cast.python.ipa.summaries.TurtleSummary;
+import com.ibm.wala.cast.python.parser.PythonSourcePosition;
 import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
-import com.ibm.wala.cast.util.SourceBuffer;
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
@@ -93,7 +93,7 @@ public class PythonTurtleAnalysisEngine extends PythonAnalysisEngine<Graph<Pytho
 			JSONObject json = new JSONObject();
 			json.put("path", path);
 			try {
-				json.put("expr", new SourceBuffer(position()).toString());
+				json.put("expr", PythonSourcePosition.getText(position()));
 			} catch (JSONException | IOException e) {
 				e.printStackTrace();
 				assert false;
@@ -195,7 +195,7 @@ public class PythonTurtleAnalysisEngine extends PythonAnalysisEngine<Graph<Pytho
 							public String toString() {
 								StringBuffer out = new StringBuffer();
 								try {
-									out.append(new SourceBuffer(((AstMethod)callerIR.getMethod()).debugInfo().getInstructionPosition(inst.iindex)));
+									out.append(PythonSourcePosition.getText(((AstMethod)callerIR.getMethod()).debugInfo().getInstructionPosition(inst.iindex)));
 								} catch (IOException e) {
 									out.append("v").append(inst.getDef());
 								}
@@ -0,0 +1,66 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.callgraph;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+
+/**
+ * Receives what the Python call graph builder does as it does it.  The
+ * default methods do nothing, and {@link #NONE}, which the builder uses
+ * unless told otherwise, overrides none of them; clients that are not
+ * {@link #isEnabled() enabled} are not timed either, so the only cost
+ * when nobody is listening is a call to an empty method.
+ */
+public interface CallGraphMetrics {
+
+	public static final CallGraphMetrics NONE = new CallGraphMetrics() { };
+
+	/**
+	 * the kinds of constraint the builder adds to bind a call
+	 */
+	public enum Constraint {
+		POSITIONAL,
+		KEYWORD,
+		DEFAULT,
+		RETURN
+	}
+
+	/**
+	 * whether the builder should time the work it reports
+	 */
+	default boolean isEnabled() {
+		return false;
+	}
+
+	default void constraintAdded(Constraint kind) {
+	}
+
+	default void callEdgeAdded(CGNode caller, CGNode target) {
+	}
+
+	default void trampolineMade(IMethod trampoline) {
+	}
+
+	default void constructorMade(IMethod constructor) {
+	}
+
+	/**
+	 * a round of the solver began, adding the constraints of the given
+	 * number of newly discovered nodes
+	 */
+	default void roundStarted(int newNodes) {
+	}
+
+	default void nodeProcessed(CGNode node, long nanos) {
+	}
+
+}
@@ -0,0 +1,161 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.callgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.ibm.wala.cast.loader.AstMethod;
+import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+
+/**
+ * Counts what the builder reports, and adds up the time spent adding
+ * the constraints of each method and of each source file, so that the
+ * files that make the solver blow up can be found from a summary of a
+ * production run.
+ */
+public class CountingCallGraphMetrics implements CallGraphMetrics {
+
+	private final Map<Constraint, LongAdder> constraints = new EnumMap<>(Constraint.class);
+
+	private final LongAdder callEdges = new LongAdder();
+	private final LongAdder trampolines = new LongAdder();
+	private final LongAdder constructors = new LongAdder();
+	private final LongAdder rounds = new LongAdder();
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	/**
+	 * keyed by signature rather than by method, so that the summary does
+	 * not keep the class hierarchies of past analyses alive
+	 */
+	private final Map<String, LongAdder> methodNanos = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> fileNanos = new ConcurrentHashMap<>();
+
+	/**
+	 * how many of the slowest methods and files the summary lists
+	 */
+	private final int top;
+
+	public CountingCallGraphMetrics(int top) {
+		this.top = top;
+		for(Constraint kind : Constraint.values()) {
+			constraints.put(kind, new LongAdder());
+		}
+	}
+
+	public CountingCallGraphMetrics() {
+		this(20);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void constraintAdded(Constraint kind) {
+		constraints.get(kind).increment();
+	}
+
+	@Override
+	public void callEdgeAdded(CGNode caller, CGNode target) {
+		callEdges.increment();
+	}
+
+	@Override
+	public void trampolineMade(IMethod trampoline) {
+		trampolines.increment();
+	}
+
+	@Override
+	public void constructorMade(IMethod constructor) {
+		constructors.increment();
+	}
+
+	@Override
+	public void roundStarted(int newNodes) {
+		rounds.increment();
+	}
+
+	@Override
+	public void nodeProcessed(CGNode node, long nanos) {
+		IMethod m = node.getMethod();
+		nodes.increment();
+		this.nanos.add(nanos);
+		methodNanos.computeIfAbsent(m.getSignature(), (k) -> new LongAdder()).add(nanos);
+		fileNanos.computeIfAbsent(fileOf(m), (k) -> new LongAdder()).add(nanos);
+	}
+
+	private static String fileOf(IMethod m) {
+		if (m instanceof AstMethod) {
+			Position p = ((AstMethod)m).getSourcePosition();
+			if (p != null && p.getURL() != null) {
+				return p.getURL().toString();
+			}
+		}
+		return m.getDeclaringClass().getName().toString();
+	}
+
+	private JSONArray slowest(Map<String, LongAdder> times) {
+		List<Map.Entry<String, LongAdder>> entries = new ArrayList<>(times.entrySet());
+		Collections.sort(entries, (a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+		JSONArray result = new JSONArray();
+		for(Map.Entry<String, LongAdder> e : entries.subList(0, Math.min(top, entries.size()))) {
+			JSONObject entry = new JSONObject();
+			entry.put("name", e.getKey());
+			entry.put("millis", e.getValue().sum() / 1000000L);
+			result.put(entry);
+		}
+		return result;
+	}
+
+	/**
+	 * @return a summary of everything counted so far
+	 */
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+
+		JSONObject kinds = new JSONObject();
+		for(Map.Entry<Constraint, LongAdder> e : constraints.entrySet()) {
+			kinds.put(e.getKey().name().toLowerCase(), e.getValue().sum());
+		}
+		json.put("constraints", kinds);
+
+		json.put("callEdges", callEdges.sum());
+		json.put("keywordBindings", constraints.get(Constraint.KEYWORD).sum());
+		json.put("defaultBindings", constraints.get(Constraint.DEFAULT).sum());
+		json.put("trampolines", trampolines.sum());
+		json.put("constructors", constructors.sum());
+		json.put("rounds", rounds.sum());
+		json.put("nodes", nodes.sum());
+		json.put("millis", nanos.sum() / 1000000L);
+		json.put("slowestMethods", slowest(methodNanos));
+		json.put("slowestFiles", slowest(fileNanos));
+
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return toJSON().toString(2);
+	}
+}
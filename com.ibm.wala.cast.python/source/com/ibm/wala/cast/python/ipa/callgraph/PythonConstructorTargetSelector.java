@@ -12,6 +12,7 @@ package com.ibm.wala.cast.python.ipa.callgraph;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ibm.wala.cast.python.ipa.summaries.PythonInstanceMethodTrampoline;
 import com.ibm.wala.cast.python.ipa.summaries.PythonSummarizedFunction;
@@ -31,11 +32,10 @@ import com.ibm.wala.ssa.SSAInstructionFactory;
 import com.ibm.wala.types.FieldReference;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.Selector;
-import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.strings.Atom;
 
 public class PythonConstructorTargetSelector implements MethodTargetSelector {
-	private final Map<IClass,IMethod> ctors = HashMapFactory.make();
+	private final Map<IClass,IMethod> ctors = new ConcurrentHashMap<>();
 	
 	private final MethodTargetSelector base;
 		
@@ -48,7 +48,7 @@ public class PythonConstructorTargetSelector implements MethodTargetSelector {
 		if (receiver != null) {
 		IClassHierarchy cha = receiver.getClassHierarchy();
 		if (cha.isSubclassOf(receiver, cha.lookupClass(PythonTypes.object)) && receiver instanceof PythonClass) {
-			if (!ctors.containsKey(receiver)) {
+			return ctors.computeIfAbsent(receiver, (cls) -> {
 				IMethod init = receiver.getMethod(new Selector(Atom.findOrCreateUnicodeAtom("__init__"), AstMethodReference.fnDesc));
 				int params = init==null? 1: init.getNumberOfParameters();
 				int v = params+2;
@@ -84,10 +84,10 @@ public class PythonConstructorTargetSelector implements MethodTargetSelector {
 			
 				ctor.setValueNames(Collections.singletonMap(1, Atom.findOrCreateUnicodeAtom("self")));
 				
-				ctors.put(receiver, new PythonSummarizedFunction(ref, ctor, receiver));
-			}
-			
-			return ctors.get(receiver);
+				IMethod m = new PythonSummarizedFunction(ref, ctor, receiver);
+				PythonSSAPropagationCallGraphBuilder.getMetrics().constructorMade(m);
+				return m;
+			});
 		}
 		}
 		return base.getCalleeTarget(caller, site, receiver);
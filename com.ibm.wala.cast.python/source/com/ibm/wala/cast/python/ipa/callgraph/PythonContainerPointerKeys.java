@@ -0,0 +1,161 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.callgraph;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.cast.ipa.callgraph.AstCFAPointerKeys;
+import com.ibm.wala.cast.ipa.callgraph.ReflectedFieldPointerKey;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.ipa.callgraph.propagation.ConstantKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * Pointer keys whose treatment of constant indices into containers can
+ * be chosen per container type.  Accesses that a model does not tell
+ * apart share the key for all elements of their index type.  Types
+ * with no model keep the default treatment, in which names have keys
+ * of their own and numbers do not.
+ *
+ * In a modelled container, every store also goes to a key for all of
+ * its elements, and reads at indices that are not told apart, such as
+ * x[i] or x[-1], read that key too, so that they see stores at indices
+ * that are.
+ */
+public class PythonContainerPointerKeys extends AstCFAPointerKeys {
+
+	public enum Model {
+		/** every constant index has its own key */
+		INDEXED,
+		/** integer indices below the cap, and the first names up to the cap, have their own keys */
+		SMALL_CONSTANT,
+		/** all elements of the same index type share one key */
+		SMASHED
+	}
+
+	private final Map<TypeReference, Model> models = HashMapFactory.make();
+
+	private final Map<IClass, Set<Object>> indices = HashMapFactory.make();
+
+	private Model defaultModel = null;
+
+	private int cap = 16;
+
+	public void setModel(TypeReference type, Model model) {
+		models.put(type, model);
+	}
+
+	/**
+	 * the model of the types that have none of their own
+	 */
+	public void setDefaultModel(Model model) {
+		defaultModel = model;
+	}
+
+	public void setCap(int cap) {
+		this.cap = cap;
+	}
+
+	private Model getModel(IClass cls) {
+		Model m = models.get(cls.getReference());
+		return m != null? m: defaultModel;
+	}
+
+	private boolean isWithinCap(IClass cls, Object index) {
+		if (index instanceof Number) {
+			long i = ((Number)index).longValue();
+			return i >= 0 && i < cap;
+		} else {
+			Set<Object> seen = indices.get(cls);
+			if (seen == null) {
+				indices.put(cls, seen = HashSetFactory.make());
+			}
+			if (seen.contains(index) || seen.size() < cap) {
+				seen.add(index);
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	@Override
+	protected PointerKey getInstanceFieldPointerKeyForConstant(InstanceKey I, ConstantKey<?> F) {
+		IClass cls = I.getConcreteType();
+		Object index = F.getValue();
+		Model model = getModel(cls);
+		if (model == null) {
+			return super.getInstanceFieldPointerKeyForConstant(I, F);
+		}
+
+		if (index instanceof Number && ((Number)index).longValue() < 0) {
+			// counts from the end, so it is some element we cannot name
+			return null;
+		}
+
+		switch (model) {
+		case SMASHED:
+			return null;
+		case SMALL_CONSTANT:
+			if (! isWithinCap(cls, index)) {
+				return null;
+			}
+			// fall through
+		case INDEXED:
+		default:
+			if (index instanceof Number) {
+				IField f = cls.getField(Atom.findOrCreateUnicodeAtom(index.toString()));
+				return f != null? getPointerKeyForInstanceField(I, f): null;
+			} else {
+				return super.getInstanceFieldPointerKeyForConstant(I, F);
+			}
+		}
+	}
+
+	private boolean isToldApart(InstanceKey I, InstanceKey F) {
+		return F instanceof ConstantKey && getInstanceFieldPointerKeyForConstant(I, (ConstantKey<?>)F) != null;
+	}
+
+	@Override
+	public Iterator<PointerKey> getPointerKeysForReflectedFieldWrite(InstanceKey I, InstanceKey F) {
+		if (getModel(I.getConcreteType()) == null) {
+			return super.getPointerKeysForReflectedFieldWrite(I, F);
+		}
+
+		List<PointerKey> keys = new ArrayList<>();
+		super.getPointerKeysForReflectedFieldWrite(I, F).forEachRemaining(keys::add);
+		keys.add(ReflectedFieldPointerKey.index(I));
+		return keys.iterator();
+	}
+
+	@Override
+	public Iterator<PointerKey> getPointerKeysForReflectedFieldRead(InstanceKey I, InstanceKey F) {
+		if (getModel(I.getConcreteType()) == null || isToldApart(I, F)) {
+			return super.getPointerKeysForReflectedFieldRead(I, F);
+		}
+
+		List<PointerKey> keys = new ArrayList<>();
+		super.getPointerKeysForReflectedFieldRead(I, F).forEachRemaining(keys::add);
+		keys.add(ReflectedFieldPointerKey.index(I));
+		return keys.iterator();
+	}
+
+}
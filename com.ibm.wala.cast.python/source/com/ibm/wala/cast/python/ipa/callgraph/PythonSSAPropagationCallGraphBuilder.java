@@ -10,16 +10,28 @@
  *****************************************************************************/
 package com.ibm.wala.cast.python.ipa.callgraph;
 
+import java.util.Map;
+import java.util.Set;
+
 import com.ibm.wala.cast.ipa.callgraph.AstSSAPropagationCallGraphBuilder;
 import com.ibm.wala.cast.ipa.callgraph.GlobalObjectKey;
+import com.ibm.wala.cast.python.ipa.callgraph.CallGraphMetrics.Constraint;
+import com.ibm.wala.cast.python.ir.PrefetchingIRFactory;
+import com.ibm.wala.cast.python.ir.PythonCAstToIRTranslator;
 import com.ibm.wala.cast.python.ir.PythonLanguage;
 import com.ibm.wala.cast.python.ssa.PythonInstructionVisitor;
 import com.ibm.wala.cast.python.ssa.PythonInvokeInstruction;
 import com.ibm.wala.cast.python.ssa.PythonStoreProperty;
 import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.cast.python.util.AnalysisBudget;
+import com.ibm.wala.cast.python.util.CompactIntSetFactory;
+import com.ibm.wala.cast.python.util.PerThreadIntSetFactory;
 import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
 import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.callgraph.propagation.AbstractFieldPointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
@@ -27,14 +39,21 @@ import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointerKeyFactory;
 import com.ibm.wala.ipa.callgraph.propagation.StaticFieldKey;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.ssa.SSAArrayLoadInstruction;
 import com.ibm.wala.ssa.SSAArrayStoreInstruction;
 import com.ibm.wala.ssa.SSABinaryOpInstruction;
+import com.ibm.wala.ssa.SSAOptions;
 import com.ibm.wala.ssa.SymbolTable;
 import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
 import com.ibm.wala.util.strings.Atom;
 
 public class PythonSSAPropagationCallGraphBuilder extends AstSSAPropagationCallGraphBuilder {
@@ -69,6 +88,148 @@ public class PythonSSAPropagationCallGraphBuilder extends AstSSAPropagationCallG
 	    return definingMethod.equals(opNode.getMethod().getReference().getDeclaringClass().getName().toString());
 	}
 
+	private static int prefetchThreads = 1;
+
+	/**
+	 * prefetch the IR of each batch of newly discovered nodes on the given
+	 * number of threads before adding their constraints; 1, the default,
+	 * builds each IR as its constraints are added.  Only IR building is
+	 * done ahead: constraints are still added and solved on one thread in
+	 * the same order, so the call graph is the same.
+	 */
+	public static void setIRPrefetchThreads(int threads) {
+		prefetchThreads = threads;
+	}
+
+	private PrefetchingIRFactory prefetcher;
+
+	private SSAOptions prefetchOptions;
+
+	/**
+	 * @param irs the factory of the IR cache of this builder
+	 * @param options the options with which that cache asks for IR
+	 */
+	public void setIRPrefetcher(PrefetchingIRFactory irs, SSAOptions options) {
+		this.prefetcher = irs;
+		this.prefetchOptions = options;
+	}
+
+	private static CallGraphMetrics metrics = CallGraphMetrics.NONE;
+
+	/**
+	 * report what builders do to the given metrics from now on
+	 */
+	public static void setMetrics(CallGraphMetrics m) {
+		metrics = m == null? CallGraphMetrics.NONE: m;
+	}
+
+	public static CallGraphMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	protected boolean addConstraintsFromNode(CGNode node, IProgressMonitor monitor) throws CancelException {
+		if (! metrics.isEnabled()) {
+			return super.addConstraintsFromNode(node, monitor);
+		}
+
+		long start = System.nanoTime();
+		try {
+			return super.addConstraintsFromNode(node, monitor);
+		} finally {
+			metrics.nodeProcessed(node, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected boolean addConstraintsFromNewNodes(IProgressMonitor monitor) throws CancelException {
+		metrics.roundStarted(discoveredNodes.size());
+		if (prefetcher != null && prefetchThreads > 1 && discoveredNodes.size() > 1) {
+			Set<IMethod> methods = HashSetFactory.make();
+			for(CGNode n : discoveredNodes) {
+				methods.add(n.getMethod());
+			}
+			prefetcher.prefetch(methods, prefetchOptions, prefetchThreads);
+		}
+		return super.addConstraintsFromNewNodes(monitor);
+	}
+
+	private AnalysisBudget budget = AnalysisBudget.UNLIMITED;
+
+	private String partial;
+
+	public void setBudget(AnalysisBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @return whether solving stopped early because the budget ran out,
+	 * leaving a call graph and pointer analysis that are sound only for
+	 * what was reached by then
+	 */
+	public boolean isPartial() {
+		return partial != null;
+	}
+
+	/**
+	 * @return which limit of the budget stopped solving, or null
+	 */
+	public String getPartialReason() {
+		return partial;
+	}
+
+	private MutableIntSetFactory<?> pointsToSets = null;
+
+	/**
+	 * make the points-to sets of this builder with a
+	 * {@link CompactIntSetFactory}, or with WALA's default
+	 */
+	public void setCompactPointsToSets(boolean compact) {
+		pointsToSets = compact? new CompactIntSetFactory(): null;
+	}
+
+	/**
+	 * make the sets this builder creates while it solves with the given
+	 * factory, or with WALA's default if it is null
+	 */
+	public void setPointsToSetFactory(MutableIntSetFactory<?> factory) {
+		pointsToSets = factory;
+	}
+
+	@Override
+	public CallGraph makeCallGraph(AnalysisOptions options, IProgressMonitor monitor) throws IllegalArgumentException, CallGraphBuilderCancelException {
+		if (pointsToSets == null) {
+			return solve(options, monitor);
+		}
+
+		PerThreadIntSetFactory sets = PerThreadIntSetFactory.install();
+		MutableIntSetFactory<?> saved = sets.bind(pointsToSets);
+		try {
+			return solve(options, monitor);
+		} finally {
+			sets.bind(saved);
+			PerThreadIntSetFactory.uninstall();
+		}
+	}
+
+	private CallGraph solve(AnalysisOptions options, IProgressMonitor monitor) throws IllegalArgumentException, CallGraphBuilderCancelException {
+		partial = null;
+		if (budget.isUnlimited()) {
+			return super.makeCallGraph(options, monitor);
+		}
+
+		AnalysisBudget.Monitor budgeted = budget.start(monitor);
+		try {
+			return super.makeCallGraph(options, budgeted);
+		} catch (CallGraphBuilderCancelException e) {
+			if (budgeted.getExceeded() == null) {
+				throw e;
+			}
+			partial = budgeted.getExceeded();
+			return e.getPartialCallGraph();
+		}
+	}
+
 	public static class PythonConstraintVisitor extends AstConstraintVisitor implements PythonInstructionVisitor {
 
 		public PythonConstraintVisitor(AstSSAPropagationCallGraphBuilder builder, CGNode node) {
@@ -98,13 +259,61 @@ public class PythonSSAPropagationCallGraphBuilder extends AstSSAPropagationCallG
 		
 	}
 
+	private final Map<IMethod,Map<Atom,Integer>> parameterIndices = HashMapFactory.make();
+	
+	/**
+	 * map from the names of the locals of the given target at its entry to
+	 * the first value number bearing each name, less one, computed once
+	 * per method
+	 */
+	protected Map<Atom,Integer> getParameterIndices(CGNode target) {
+		Map<Atom,Integer> indices = parameterIndices.get(target.getMethod());
+		if (indices == null) {
+			indices = HashMapFactory.make();
+			IR ir = target.getIR();
+			for(int i = 0; i < ir.getSymbolTable().getMaxValueNumber(); i++) {
+				String[] names = ir.getLocalNames(0, i+1);
+				if (names != null) {
+					for(String name : names) {
+						Atom key = Atom.findOrCreateUnicodeAtom(name);
+						if (! indices.containsKey(key)) {
+							indices.put(key, i);
+						}
+					}
+				}
+			}
+			parameterIndices.put(target.getMethod(), indices);
+		}
+		return indices;
+	}
+
+	private final Map<IMethod,PointerKey[]> defaultKeys = HashMapFactory.make();
+
+	/**
+	 * the keys of the globals that hold the default values of the
+	 * parameters of the given method, indexed by parameter and null for
+	 * those without a default, computed once per method
+	 */
+	protected PointerKey[] getDefaultKeys(IMethod method) {
+		PointerKey[] keys = defaultKeys.get(method);
+		if (keys == null) {
+			keys = new PointerKey[ method.getNumberOfParameters() ];
+			String fnName = method.getDeclaringClass().getName().toString();
+			for(int i = method.getNumberOfParameters() - method.getNumberOfDefaultParameters(); i < keys.length; i++) {
+				FieldReference global = FieldReference.findOrCreate(PythonTypes.Root, Atom.findOrCreateUnicodeAtom("global " + PythonCAstToIRTranslator.defaultsGlobalName(fnName, i)), PythonTypes.Root);
+				IField f = getClassHierarchy().resolveField(global);
+				keys[i] = new StaticFieldKey(f);
+			}
+			defaultKeys.put(method, keys);
+		}
+		return keys;
+	}
+
 	@Override
 	protected void processCallingConstraints(CGNode caller, SSAAbstractInvokeInstruction instruction, CGNode target,
 			InstanceKey[][] constParams, PointerKey uniqueCatchKey) {
 		
-		if (target.toString().contains("numpy_input_fn")) {
-			System.err.println(target);
-		}
+		metrics.callEdgeAdded(caller, target);
 		
 		if (! (instruction instanceof PythonInvokeInstruction)) {
 			super.processCallingConstraints(caller, instruction, target, constParams, uniqueCatchKey);
@@ -126,45 +335,39 @@ public class PythonSSAPropagationCallGraphBuilder extends AstSSAPropagationCallG
 					PointerKey rval = getPointerKeyForLocal(caller, call.getUse(i));
 					getSystem().newConstraint(lval, assignOperator, rval);
 				}
+				metrics.constraintAdded(Constraint.POSITIONAL);
 			}
 			
 			// keyword arguments
 			int paramNumber = call.getNumberOfPositionalParameters();
-			keywords: for(String argName : call.getKeywords()) {
-				int src = call.getUse(argName);
-				for(int i = 0; i < target.getIR().getSymbolTable().getMaxValueNumber(); i++) {
-					String[] paramNames = target.getIR().getLocalNames(0, i+1);
-					if (paramNames != null) {
-						for(String destName : paramNames) {
-							if (argName.equals(destName)) {
-								PointerKey lval = getPointerKeyForLocal(target, i+1);
-								args.add(i);
-								int p = paramNumber;
-								if (constParams != null && constParams[p] != null) {
-									InstanceKey[] ik = constParams[p];
-									for (InstanceKey element : ik) {
-										system.newConstraint(lval, element);
-									}		
-								} else {
-									PointerKey rval = getPointerKeyForLocal(caller, src);
-									getSystem().newConstraint(lval, assignOperator, rval);
-								}
-								paramNumber++;
-								continue keywords;
-							}
-						}
-					}	
+			Map<Atom,Integer> paramIndices = getParameterIndices(target);
+			for(int k = 0; k < call.getNumberOfKeywordParameters(); k++) {
+				Integer i = paramIndices.get(call.getKeyword(k));
+				if (i != null) {
+					int src = call.getKeywordUse(k);
+					PointerKey lval = getPointerKeyForLocal(target, i+1);
+					args.add(i);
+					int p = paramNumber;
+					if (constParams != null && constParams[p] != null) {
+						InstanceKey[] ik = constParams[p];
+						for (InstanceKey element : ik) {
+							system.newConstraint(lval, element);
+						}		
+					} else {
+						PointerKey rval = getPointerKeyForLocal(caller, src);
+						getSystem().newConstraint(lval, assignOperator, rval);
+					}
+					metrics.constraintAdded(Constraint.KEYWORD);
+					paramNumber++;
 				}
 			}
 
-			int dflts = target.getMethod().getNumberOfParameters() - target.getMethod().getNumberOfDefaultParameters();
-			for(int i = dflts; i < target.getMethod().getNumberOfParameters(); i++) {
-				if (! args.contains(i)) {
-					String name = target.getMethod().getDeclaringClass().getName() + "_defaults_" + i;
-					FieldReference global = FieldReference.findOrCreate(PythonTypes.Root, Atom.findOrCreateUnicodeAtom("global " + name), PythonTypes.Root);
-					IField f = getClassHierarchy().resolveField(global);
+			PointerKey[] dflts = getDefaultKeys(target.getMethod());
+			for(int i = 0; i < dflts.length; i++) {
+				if (dflts[i] != null && ! args.contains(i)) {
 					PointerKey lval = getPointerKeyForLocal(target, i+1);
-					getSystem().newConstraint(lval, assignOperator, new StaticFieldKey(f));
+					getSystem().newConstraint(lval, assignOperator, dflts[i]);
+					metrics.constraintAdded(Constraint.DEFAULT);
 				}
 			}
 
@@ -172,6 +375,7 @@ public class PythonSSAPropagationCallGraphBuilder extends AstSSAPropagationCallG
 			PointerKey rret = getPointerKeyForReturnValue(target);
 			PointerKey lret = getPointerKeyForLocal(caller, call.getReturnValue(0));
 			getSystem().newConstraint(lret, assignOperator, rret);
+			metrics.constraintAdded(Constraint.RETURN);
 		}
 	}
 
@@ -0,0 +1,127 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.callgraph;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.cast.loader.AstMethod;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummarizedFunction;
+import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.ContextSelector;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.nCFAContextSelector;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * Gives 1-CFA contexts only to the callees where they pay off: the
+ * trampolines for bound methods and comprehensions, and user functions
+ * that call one of their own parameters.  Every other callee, notably
+ * the summarized library models, is analyzed once in the context of the
+ * base selector.  Each callee gets at most a fixed number of call-string
+ * contexts; calls beyond that share the base context.
+ */
+public class PythonSelectiveContextSelector implements ContextSelector {
+	private final ContextSelector base;
+	private final ContextSelector sensitive;
+	private final IAnalysisCacheView cache;
+	private final int budget;
+
+	private final Map<IMethod,Boolean> higherOrder = HashMapFactory.make();
+	private final Map<IMethod,Set<Context>> contexts = HashMapFactory.make();
+
+	public PythonSelectiveContextSelector(ContextSelector base, IAnalysisCacheView cache, int budget) {
+		this.base = base;
+		this.sensitive = new nCFAContextSelector(1, base);
+		this.cache = cache;
+		this.budget = budget;
+	}
+
+	private static boolean isTrampoline(IMethod callee) {
+		IClass cls = callee.getDeclaringClass();
+		IClassHierarchy cha = cls.getClassHierarchy();
+		return callee instanceof PythonSummarizedFunction &&
+			(cha.isSubclassOf(cls, cha.lookupClass(PythonTypes.trampoline)) ||
+			 cha.isSubclassOf(cls, cha.lookupClass(PythonTypes.comprehension)));
+	}
+
+	/**
+	 * whether the given code body calls one of its parameters, other
+	 * than the function object itself
+	 */
+	private boolean isHigherOrder(IMethod callee) {
+		if (! (callee instanceof AstMethod)) {
+			return false;
+		}
+
+		Boolean result = higherOrder.get(callee);
+		if (result == null) {
+			result = false;
+			IR ir = cache.getIR(callee);
+			if (ir != null) {
+				for(SSAInstruction inst : ir.getInstructions()) {
+					if (inst instanceof SSAAbstractInvokeInstruction && inst.getNumberOfUses() > 0) {
+						int f = inst.getUse(0);
+						if (f > 1 && f <= callee.getNumberOfParameters()) {
+							result = true;
+							break;
+						}
+					}
+				}
+			}
+			higherOrder.put(callee, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return whether calls to the given method should be told apart by
+	 * call site
+	 */
+	protected boolean isSensitive(IMethod callee) {
+		return isTrampoline(callee) || isHigherOrder(callee);
+	}
+
+	@Override
+	public Context getCalleeTarget(CGNode caller, CallSiteReference site, IMethod callee, InstanceKey[] actualParameters) {
+		if (isSensitive(callee)) {
+			Context c = sensitive.getCalleeTarget(caller, site, callee, actualParameters);
+			Set<Context> seen = contexts.get(callee);
+			if (seen == null) {
+				contexts.put(callee, seen = HashSetFactory.make());
+			}
+			if (seen.contains(c) || seen.size() < budget) {
+				seen.add(c);
+				return c;
+			}
+		}
+
+		return base.getCalleeTarget(caller, site, callee, actualParameters);
+	}
+
+	@Override
+	public IntSet getRelevantParameters(CGNode caller, CallSiteReference site) {
+		return sensitive.getRelevantParameters(caller, site);
+	}
+
+}
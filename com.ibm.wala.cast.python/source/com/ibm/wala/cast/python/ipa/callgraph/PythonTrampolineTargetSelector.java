@@ -11,6 +11,7 @@
 package com.ibm.wala.cast.python.ipa.callgraph;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ibm.wala.cast.loader.DynamicCallSiteReference;
 import com.ibm.wala.cast.python.ipa.summaries.PythonSummarizedFunction;
@@ -39,15 +40,16 @@ public class PythonTrampolineTargetSelector implements MethodTargetSelector {
 		this.base = base;
 	}
 
-	private final Map<Pair<IClass,Integer>, IMethod> codeBodies = HashMapFactory.make();
+	private final Map<Pair<IClass,Integer>, IMethod> codeBodies = new ConcurrentHashMap<>();
+
+	private final Map<Pair<CGNode,CallSiteReference>, PythonInvokeInstruction> calls = new ConcurrentHashMap<>();
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public IMethod getCalleeTarget(CGNode caller, CallSiteReference site, IClass receiver) {
 		if (receiver != null) {
 			IClassHierarchy cha = receiver.getClassHierarchy();
 			if (cha.isSubclassOf(receiver, cha.lookupClass(PythonTypes.trampoline))) {
-				PythonInvokeInstruction call = (PythonInvokeInstruction) caller.getIR().getCalls(site)[0];
+				PythonInvokeInstruction call = calls.computeIfAbsent(Pair.make(caller, site), (k) -> (PythonInvokeInstruction) caller.getIR().getCalls(site)[0]);
 				Pair<IClass,Integer> key = Pair.make(receiver,  call.getNumberOfTotalParameters());
 				if (!codeBodies.containsKey(key)) {
 					Map<Integer,Atom> names = HashMapFactory.make();
@@ -68,26 +70,27 @@ public class PythonTrampolineTargetSelector implements MethodTargetSelector {
 						params[i++] = j+1;
 					}
 
-					int ki = 0, ji = call.getNumberOfPositionalParameters()+1;
-					Pair<String,Integer>[] keys = new Pair[0];
-					if (call.getKeywords() != null) {
-						keys = new Pair[call.getKeywords().size()];
-						for(String k : call.getKeywords()) {
-							names.put(ji, Atom.findOrCreateUnicodeAtom(k));
-							keys[ki++] = Pair.make(k, ji++);
-						}
+					int ji = call.getNumberOfPositionalParameters()+1;
+					Atom[] keys = new Atom[ call.getNumberOfKeywordParameters() ];
+					int[] keyUses = new int[ call.getNumberOfKeywordParameters() ];
+					for(int ki = 0; ki < keys.length; ki++) {
+						keys[ki] = call.getKeyword(ki);
+						names.put(ji, keys[ki]);
+						keyUses[ki] = ji++;
 					}
 
 					int result = v1 + 1;
 					int except = v1 + 2;
 					CallSiteReference ref = new DynamicCallSiteReference(call.getCallSite().getDeclaredTarget(), 2);
-					x.addStatement(new PythonInvokeInstruction(2, result, except, ref, params, keys));
+					x.addStatement(new PythonInvokeInstruction(2, result, except, ref, params, keys, keyUses));
 
 					x.addStatement(new SSAReturnInstruction(3, result, false));
 					
 					x.setValueNames(names);
 					
-					codeBodies.put(key, new PythonSummarizedFunction(tr, x, receiver));
+					if (codeBodies.putIfAbsent(key, new PythonSummarizedFunction(tr, x, receiver)) == null) {
+						PythonSSAPropagationCallGraphBuilder.getMetrics().trampolineMade(codeBodies.get(key));
+					}
 				}
 
 				return codeBodies.get(key);
@@ -0,0 +1,296 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.summaries;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.ClassSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.FunctionSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.ModuleSummary;
+import com.ibm.wala.cast.python.ir.PythonLanguage;
+import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.cast.types.AstMethodReference;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.ClassTargetSelector;
+import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.SSAInstructionFactory;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * Models the modules of summary bundles for one class hierarchy.  A
+ * module of a bundle is translated into summaries the first time the
+ * analysis imports it, calls into it or allocates one of its types, in
+ * the same shape as the XML summaries: importing a module yields an
+ * object with a field for each of its functions and classes, calling a
+ * class yields an instance with a field for each of its methods, and
+ * calling a function yields what the bundle says it returns.  Each
+ * function and each returned object is its own allocation, so values
+ * of unrelated library calls are kept apart.
+ */
+public class PythonBundleSummaries {
+	private static final TypeName NONE = TypeName.findOrCreate("L");
+
+	private final IClassHierarchy cha;
+	private final PythonSummaryFields fields;
+	private final List<PythonSummaryBundle> bundles;
+
+	private final Map<TypeName, TypeName> modulesOfTypes = new ConcurrentHashMap<>();
+	private final Map<TypeName, ModuleSummary> modules = new ConcurrentHashMap<>();
+	private final Map<TypeName, IMethod> code = new ConcurrentHashMap<>();
+
+	public PythonBundleSummaries(PythonSummaryFields fields, List<PythonSummaryBundle> bundles) {
+		this.cha = fields.getClassHierarchy();
+		this.fields = fields;
+		this.bundles = bundles;
+	}
+
+	private static TypeReference type(String name) {
+		return TypeReference.findOrCreate(PythonTypes.pythonLoader, "L" + name);
+	}
+
+	private static FieldReference field(String name) {
+		return FieldReference.findOrCreate(PythonTypes.Root, Atom.findOrCreateUnicodeAtom(name), PythonTypes.Root);
+	}
+
+	private static String functionType(ModuleSummary m, FunctionSummary f) {
+		return m.getName() + "/functions/" + f.getName();
+	}
+
+	private static String classType(ModuleSummary m, ClassSummary c) {
+		return m.getName() + "/classes/" + c.getName();
+	}
+
+	private static String instanceType(ModuleSummary m, ClassSummary c) {
+		return m.getName() + "/instances/" + c.getName();
+	}
+
+	private static String methodType(ModuleSummary m, ClassSummary c, FunctionSummary f) {
+		return m.getName() + "/methods/" + c.getName() + "/" + f.getName();
+	}
+
+	/**
+	 * the name of the bundled module to which the given type belongs, the
+	 * module with the longest name that prefixes it, or {@link #NONE}
+	 */
+	private TypeName moduleOf(TypeName type) {
+		return modulesOfTypes.computeIfAbsent(type, (t) -> {
+			String s = t.toString().substring(1);
+			String best = null;
+			for(PythonSummaryBundle b : bundles) {
+				for(String m : b.getModuleNames()) {
+					if ((s.equals(m) || s.startsWith(m + "/")) && (best == null || m.length() > best.length())) {
+						best = m;
+					}
+				}
+			}
+			return best == null? NONE: TypeName.findOrCreate("L" + best);
+		});
+	}
+
+	/**
+	 * make sure the module to which the given type belongs, if any, is
+	 * translated and its classes are registered
+	 *
+	 * @return whether the type belongs to a module of the bundles
+	 */
+	private boolean load(TypeName type) {
+		TypeName module = moduleOf(type);
+		if (module == NONE) {
+			return false;
+		}
+		if (! modules.containsKey(module)) {
+			synchronized (this) {
+				if (! modules.containsKey(module)) {
+					String name = module.toString().substring(1);
+					for(PythonSummaryBundle b : bundles) {
+						ModuleSummary m = b.getModule(name);
+						if (m != null) {
+							translate(m);
+							modules.put(module, m);
+							break;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private void translate(ModuleSummary m) {
+		Set<TypeReference> types = HashSetFactory.make();
+		Map<TypeReference, PythonSummary> summaries = HashMapFactory.make();
+
+		TypeReference moduleType = type(m.getName());
+		types.add(moduleType);
+		PythonSummary imprt = new PythonSummary(MethodReference.findOrCreate(moduleType, "import", "()" + moduleType.getName()), 0);
+		imprt.setStatic(true);
+		SSAInstructionFactory insts = PythonLanguage.Python.instructionFactory();
+		int pc = 0;
+		int v = 1;
+		int x = v++;
+		imprt.addStatement(insts.NewInstruction(pc, x, NewSiteReference.make(pc, moduleType)));
+		pc++;
+		for(FunctionSummary f : m.getFunctions()) {
+			TypeReference ft = type(functionType(m, f));
+			types.add(ft);
+			int fv = v++;
+			imprt.addStatement(insts.NewInstruction(pc, fv, NewSiteReference.make(pc, ft)));
+			pc++;
+			imprt.addStatement(insts.PutInstruction(pc, x, fv, field(f.getName())));
+			pc++;
+			summaries.put(ft, function(m, ft, f));
+		}
+		for(ClassSummary c : m.getClasses()) {
+			TypeReference ct = type(classType(m, c));
+			types.add(ct);
+			types.add(type(instanceType(m, c)));
+			int cv = v++;
+			imprt.addStatement(insts.NewInstruction(pc, cv, NewSiteReference.make(pc, ct)));
+			pc++;
+			imprt.addStatement(insts.PutInstruction(pc, x, cv, field(c.getName())));
+			pc++;
+
+			FunctionSummary init = null;
+			for(FunctionSummary f : c.getMethods()) {
+				TypeReference mt = type(methodType(m, c, f));
+				types.add(mt);
+				summaries.put(mt, function(m, mt, f));
+				if ("__init__".equals(f.getName())) {
+					init = f;
+				}
+			}
+			List<String> params = init == null? Collections.<String>emptyList(): init.getParameters();
+			summaries.put(ct, function(m, ct, new FunctionSummary(c.getName(), params, PythonSummaryBundle.Return.INSTANCE, m.getClasses().indexOf(c))));
+		}
+		imprt.addStatement(insts.ReturnInstruction(pc, x, false));
+		summaries.put(moduleType, imprt);
+
+		new PythonSummaryClasses(fields, types).register();
+
+		IClassLoader ldr = cha.getLoader(cha.getScope().getSyntheticLoader());
+		for(Map.Entry<TypeReference, PythonSummary> s : summaries.entrySet()) {
+			IClass cls = ldr.lookupClass(s.getKey().getName());
+			code.put(s.getKey().getName(), new PythonSummarizedFunction(s.getValue().getMethod(), s.getValue(), cls));
+		}
+	}
+
+	private PythonSummary function(ModuleSummary m, TypeReference type, FunctionSummary f) {
+		int params = f.getParameters().size();
+		PythonSummary x = new PythonSummary(MethodReference.findOrCreate(type, AstMethodReference.fnSelector), params + 1);
+		Map<Integer, Atom> names = HashMapFactory.make();
+		for(int i = 0; i < params; i++) {
+			names.put(i + 2, Atom.findOrCreateUnicodeAtom(f.getParameters().get(i)));
+		}
+		x.setValueNames(names);
+
+		SSAInstructionFactory insts = PythonLanguage.Python.instructionFactory();
+		int pc = 0;
+		int v = params + 2;
+		switch (f.getReturn()) {
+		case NONE:
+			x.addStatement(insts.ReturnInstruction(pc));
+			break;
+		case PARAMETER:
+			x.addStatement(insts.ReturnInstruction(pc, f.getReturnIndex() + 2, false));
+			break;
+		case INSTANCE: {
+			ClassSummary c = m.getClasses().get(f.getReturnIndex());
+			int obj = v++;
+			x.addStatement(insts.NewInstruction(pc, obj, NewSiteReference.make(pc, type(instanceType(m, c)))));
+			pc++;
+			for(FunctionSummary method : c.getMethods()) {
+				int mv = v++;
+				x.addStatement(insts.NewInstruction(pc, mv, NewSiteReference.make(pc, type(methodType(m, c, method)))));
+				pc++;
+				x.addStatement(insts.PutInstruction(pc, obj, mv, field(method.getName())));
+				pc++;
+			}
+			x.addStatement(insts.ReturnInstruction(pc, obj, false));
+			break;
+		}
+		case OBJECT:
+		default: {
+			int obj = v++;
+			x.addStatement(insts.NewInstruction(pc, obj, NewSiteReference.make(pc, PythonTypes.object)));
+			pc++;
+			x.addStatement(insts.ReturnInstruction(pc, obj, false));
+		}
+		}
+		return x;
+	}
+
+	private class PythonMethodBundleTargetSelector implements MethodTargetSelector {
+		private final MethodTargetSelector base;
+
+		private PythonMethodBundleTargetSelector(MethodTargetSelector base) {
+			this.base = base;
+		}
+
+		@Override
+		public IMethod getCalleeTarget(CGNode caller, CallSiteReference site, IClass receiver) {
+			TypeName type = receiver == null? site.getDeclaredTarget().getDeclaringClass().getName(): receiver.getName();
+			if (load(type)) {
+				IMethod m = code.get(type);
+				if (m != null && m.getSelector().equals(site.getDeclaredTarget().getSelector())) {
+					return m;
+				}
+			}
+			return base.getCalleeTarget(caller, site, receiver);
+		}
+	}
+
+	private class PythonClassBundleTargetSelector implements ClassTargetSelector {
+		private final ClassTargetSelector base;
+
+		private PythonClassBundleTargetSelector(ClassTargetSelector base) {
+			this.base = base;
+		}
+
+		@Override
+		public IClass getAllocatedTarget(CGNode caller, NewSiteReference site) {
+			TypeName type = site.getDeclaredType().getName();
+			if (load(type)) {
+				IClass cls = cha.getLoader(cha.getScope().getSyntheticLoader()).lookupClass(type);
+				if (cls != null) {
+					return cls;
+				}
+			}
+			return base.getAllocatedTarget(caller, site);
+		}
+	}
+
+	/**
+	 * consult the bundles before the current selectors of the given options;
+	 * selectors installed afterwards, such as those of the XML summaries,
+	 * are consulted first
+	 */
+	public void analyzeWithBundles(AnalysisOptions options) {
+		options.setSelector(new PythonMethodBundleTargetSelector(options.getMethodTargetSelector()));
+		options.setSelector(new PythonClassBundleTargetSelector(options.getClassTargetSelector()));
+	}
+}
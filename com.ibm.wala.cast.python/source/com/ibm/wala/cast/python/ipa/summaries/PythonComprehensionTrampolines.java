@@ -1,8 +1,11 @@
 package com.ibm.wala.cast.python.ipa.summaries;
 
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ibm.wala.cast.loader.DynamicCallSiteReference;
+import com.ibm.wala.cast.python.ipa.callgraph.PythonSSAPropagationCallGraphBuilder;
 import com.ibm.wala.cast.python.ir.PythonLanguage;
 import com.ibm.wala.cast.python.ssa.PythonInvokeInstruction;
 import com.ibm.wala.cast.python.types.PythonTypes;
@@ -15,13 +18,12 @@ import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.Selector;
-import com.ibm.wala.util.collections.HashMapFactory;
-import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.strings.Atom;
 
 public class PythonComprehensionTrampolines implements MethodTargetSelector {
 	private final MethodTargetSelector base;
-	private final Map<IClass, PythonSummarizedFunction> trampolines = HashMapFactory.make();
+	private final Map<IClass, PythonSummarizedFunction> trampolines = new ConcurrentHashMap<>();
+	private final Set<IMethod> trampolineMethods = ConcurrentHashMap.newKeySet();
 
 	public PythonComprehensionTrampolines(MethodTargetSelector base) {
 		this.base = base;
@@ -32,7 +34,7 @@ public class PythonComprehensionTrampolines implements MethodTargetSelector {
 		MethodReference method = site.getDeclaredTarget();
 		if (method.getSelector().equals(AstMethodReference.fnSelector) &&
 			caller.getClassHierarchy().isSubclassOf(receiver, caller.getClassHierarchy().lookupClass(PythonTypes.comprehension)) &&
-			!trampolines.values().contains(caller.getMethod())) {
+			!trampolineMethods.contains(caller.getMethod())) {
 
 			if (trampolines.containsKey(receiver)) {
 				return trampolines.get(receiver);
@@ -70,7 +72,7 @@ public class PythonComprehensionTrampolines implements MethodTargetSelector {
 				int s = idx++;
 				int r = v++;
 				CallSiteReference ss = new DynamicCallSiteReference(PythonTypes.CodeBody, s);
-				x.addStatement(new PythonInvokeInstruction(s, r, v++, ss, args, new Pair[0]));
+				x.addStatement(new PythonInvokeInstruction(s, r, v++, ss, args));
 
 				x.addStatement(PythonLanguage.Python.instructionFactory().PropertyWrite(idx++, 2, ofv, r));
 
@@ -78,8 +80,13 @@ public class PythonComprehensionTrampolines implements MethodTargetSelector {
 
 				PythonSummarizedFunction code = new PythonSummarizedFunction(synth, x, receiver);
 
-				trampolines.put(receiver, code);
+				PythonSummarizedFunction old = trampolines.putIfAbsent(receiver, code);
+				if (old != null) {
+					return old;
+				}
 
+				trampolineMethods.add(code);
+				PythonSSAPropagationCallGraphBuilder.getMetrics().trampolineMade(code);
 				return code;
 			}
 		}
@@ -0,0 +1,410 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.summaries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+
+/**
+ * A versioned archive of the summaries of the modules of one or more
+ * libraries, meant to be generated ahead of time, for instance from
+ * type stubs, and memory mapped when analyses start.  Opening a bundle
+ * reads only the names of its modules; each module is decoded the first
+ * time it is asked for.
+ *
+ * The archive is big endian.  It starts with a header of magic number,
+ * version, number of strings and number of modules.  Then come the
+ * offset of each string, the name and offset of each module, the
+ * strings, each a length and UTF-8 bytes, and the modules.  A module is
+ * its functions followed by its classes; a class is its name followed
+ * by its methods; and a function is its name, its parameter names, and
+ * what it returns.  Names are indices into the strings.
+ */
+public class PythonSummaryBundle {
+
+	public static final int MAGIC = 0x57505342;
+
+	public static final int VERSION = 1;
+
+	/**
+	 * what a summarized function returns
+	 */
+	public enum Return {
+		/** nothing */
+		NONE,
+		/** a new object of unknown type */
+		OBJECT,
+		/** a new instance of the class of its module with the given index */
+		INSTANCE,
+		/** the parameter with the given index */
+		PARAMETER
+	}
+
+	public static class FunctionSummary {
+		private final String name;
+		private final List<String> parameters;
+		private final Return returns;
+		private final int returnIndex;
+
+		public FunctionSummary(String name, List<String> parameters, Return returns, int returnIndex) {
+			this.name = name;
+			this.parameters = Collections.unmodifiableList(parameters);
+			this.returns = returns;
+			this.returnIndex = returnIndex;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<String> getParameters() {
+			return parameters;
+		}
+
+		public Return getReturn() {
+			return returns;
+		}
+
+		/**
+		 * @return the index of the returned class or parameter, if any
+		 */
+		public int getReturnIndex() {
+			return returnIndex;
+		}
+	}
+
+	public static class ClassSummary {
+		private final String name;
+		private final List<FunctionSummary> methods;
+
+		public ClassSummary(String name, List<FunctionSummary> methods) {
+			this.name = name;
+			this.methods = Collections.unmodifiableList(methods);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the methods, without their self parameters; a method
+		 * named __init__ gives the parameters of the constructor
+		 */
+		public List<FunctionSummary> getMethods() {
+			return methods;
+		}
+	}
+
+	public static class ModuleSummary {
+		private final String name;
+		private final List<FunctionSummary> functions;
+		private final List<ClassSummary> classes;
+
+		public ModuleSummary(String name, List<FunctionSummary> functions, List<ClassSummary> classes) {
+			this.name = name;
+			this.functions = Collections.unmodifiableList(functions);
+			this.classes = Collections.unmodifiableList(classes);
+		}
+
+		/**
+		 * @return the name of the module as imported, with / between its
+		 * components
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public List<FunctionSummary> getFunctions() {
+			return functions;
+		}
+
+		public List<ClassSummary> getClasses() {
+			return classes;
+		}
+	}
+
+	private final ByteBuffer data;
+
+	private final int stringCount;
+
+	private final Map<String, Integer> moduleOffsets = HashMapFactory.make();
+
+	private final Map<String, ModuleSummary> modules = new ConcurrentHashMap<>();
+
+	private PythonSummaryBundle(ByteBuffer data) throws IOException {
+		this.data = data;
+		if (data.limit() < 16 || data.getInt(0) != MAGIC) {
+			throw new IOException("not a summary bundle");
+		}
+		if (data.getInt(4) != VERSION) {
+			throw new IOException("unsupported summary bundle version " + data.getInt(4));
+		}
+		stringCount = data.getInt(8);
+		int moduleCount = data.getInt(12);
+		if (stringCount < 0 || moduleCount < 0) {
+			throw corrupt();
+		}
+		check(16, 4L*stringCount + 8L*moduleCount);
+		for(int i = 0; i < stringCount; i++) {
+			int offset = data.getInt(16 + 4*i);
+			check(offset, 4);
+			check(offset + 4L, data.getInt(offset));
+		}
+		int index = 16 + 4*stringCount;
+		for(int i = 0; i < moduleCount; i++) {
+			int offset = data.getInt(index + 4);
+			checkModule(offset);
+			moduleOffsets.put(string(checkString(data.getInt(index))), offset);
+			index += 8;
+		}
+	}
+
+	private static IOException corrupt() {
+		return new IOException("truncated or corrupt summary bundle");
+	}
+
+	private void check(long offset, long length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > data.limit()) {
+			throw corrupt();
+		}
+	}
+
+	private int checkString(int i) throws IOException {
+		if (i < 0 || i >= stringCount) {
+			throw corrupt();
+		}
+		return i;
+	}
+
+	private static int checkInt(ByteBuffer b) throws IOException {
+		if (b.remaining() < 4) {
+			throw corrupt();
+		}
+		return b.getInt();
+	}
+
+	private static int checkCount(ByteBuffer b) throws IOException {
+		int count = checkInt(b);
+		if (count < 0) {
+			throw corrupt();
+		}
+		return count;
+	}
+
+	/**
+	 * make sure the given module is within the bundle and refers only to
+	 * strings and return kinds that exist, so that decoding it later
+	 * cannot fail
+	 */
+	private void checkModule(int offset) throws IOException {
+		check(offset, 0);
+		ByteBuffer b = data.duplicate();
+		b.position(offset);
+		checkFunctions(b);
+		int classCount = checkCount(b);
+		for(int i = 0; i < classCount; i++) {
+			checkString(checkInt(b));
+			checkFunctions(b);
+		}
+	}
+
+	private void checkFunctions(ByteBuffer b) throws IOException {
+		int count = checkCount(b);
+		for(int i = 0; i < count; i++) {
+			checkString(checkInt(b));
+			int paramCount = checkCount(b);
+			for(int j = 0; j < paramCount; j++) {
+				checkString(checkInt(b));
+			}
+			if (! b.hasRemaining()) {
+				throw corrupt();
+			}
+			byte returns = b.get();
+			if (returns < 0 || returns >= Return.values().length) {
+				throw corrupt();
+			}
+			checkInt(b);
+		}
+	}
+
+	/**
+	 * map the given bundle into memory
+	 */
+	public static PythonSummaryBundle open(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new PythonSummaryBundle(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		}
+	}
+
+	/**
+	 * read a bundle held in the given buffer
+	 *
+	 * @throws IOException if the buffer does not hold a whole, well-formed
+	 * bundle
+	 */
+	public static PythonSummaryBundle read(ByteBuffer data) throws IOException {
+		return new PythonSummaryBundle(data);
+	}
+
+	public Set<String> getModuleNames() {
+		return Collections.unmodifiableSet(moduleOffsets.keySet());
+	}
+
+	/**
+	 * @return the summary of the given module, or null if the bundle does
+	 * not have it
+	 */
+	public ModuleSummary getModule(String name) {
+		Integer offset = moduleOffsets.get(name);
+		if (offset == null) {
+			return null;
+		}
+		return modules.computeIfAbsent(name, (n) -> decodeModule(n, offset));
+	}
+
+	private String string(int i) {
+		assert i >= 0 && i < stringCount;
+		int offset = data.getInt(16 + 4*i);
+		byte[] bytes = new byte[ data.getInt(offset) ];
+		ByteBuffer b = data.duplicate();
+		b.position(offset + 4);
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private ModuleSummary decodeModule(String name, int offset) {
+		ByteBuffer b = data.duplicate();
+		b.position(offset);
+		List<FunctionSummary> functions = decodeFunctions(b);
+		int classCount = b.getInt();
+		List<ClassSummary> classes = new ArrayList<>(classCount);
+		for(int i = 0; i < classCount; i++) {
+			String cls = string(b.getInt());
+			classes.add(new ClassSummary(cls, decodeFunctions(b)));
+		}
+		return new ModuleSummary(name, functions, classes);
+	}
+
+	private List<FunctionSummary> decodeFunctions(ByteBuffer b) {
+		int count = b.getInt();
+		List<FunctionSummary> functions = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			String name = string(b.getInt());
+			int paramCount = b.getInt();
+			List<String> params = new ArrayList<>(paramCount);
+			for(int j = 0; j < paramCount; j++) {
+				params.add(string(b.getInt()));
+			}
+			Return returns = Return.values()[ b.get() ];
+			int returnIndex = b.getInt();
+			functions.add(new FunctionSummary(name, params, returns, returnIndex));
+		}
+		return functions;
+	}
+
+	private static class Writer {
+		private final Map<String, Integer> strings = HashMapFactory.make();
+		private final List<String> stringList = new ArrayList<>();
+
+		private int string(String s) {
+			Integer i = strings.get(s);
+			if (i == null) {
+				strings.put(s, i = stringList.size());
+				stringList.add(s);
+			}
+			return i;
+		}
+
+		private void writeFunctions(DataOutputStream out, List<FunctionSummary> functions) throws IOException {
+			out.writeInt(functions.size());
+			for(FunctionSummary f : functions) {
+				out.writeInt(string(f.getName()));
+				out.writeInt(f.getParameters().size());
+				for(String p : f.getParameters()) {
+					out.writeInt(string(p));
+				}
+				out.writeByte(f.getReturn().ordinal());
+				out.writeInt(f.getReturnIndex());
+			}
+		}
+
+		private void write(Collection<ModuleSummary> modules, OutputStream stream) throws IOException {
+			ByteArrayOutputStream moduleBytes = new ByteArrayOutputStream();
+			DataOutputStream moduleData = new DataOutputStream(moduleBytes);
+			int[] moduleNames = new int[ modules.size() ];
+			int[] moduleStarts = new int[ modules.size() ];
+			int m = 0;
+			for(ModuleSummary module : modules) {
+				moduleNames[m] = string(module.getName());
+				moduleStarts[m++] = moduleData.size();
+				writeFunctions(moduleData, module.getFunctions());
+				moduleData.writeInt(module.getClasses().size());
+				for(ClassSummary cls : module.getClasses()) {
+					moduleData.writeInt(string(cls.getName()));
+					writeFunctions(moduleData, cls.getMethods());
+				}
+			}
+			moduleData.flush();
+
+			ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+			DataOutputStream stringData = new DataOutputStream(stringBytes);
+			int[] stringStarts = new int[ stringList.size() ];
+			for(int i = 0; i < stringStarts.length; i++) {
+				byte[] bytes = stringList.get(i).getBytes(StandardCharsets.UTF_8);
+				stringStarts[i] = stringData.size();
+				stringData.writeInt(bytes.length);
+				stringData.write(bytes);
+			}
+			stringData.flush();
+
+			int header = 16 + 4*stringStarts.length + 8*moduleNames.length;
+			DataOutputStream out = new DataOutputStream(stream);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(stringStarts.length);
+			out.writeInt(moduleNames.length);
+			for(int start : stringStarts) {
+				out.writeInt(header + start);
+			}
+			for(int i = 0; i < moduleNames.length; i++) {
+				out.writeInt(moduleNames[i]);
+				out.writeInt(header + stringData.size() + moduleStarts[i]);
+			}
+			stringBytes.writeTo(out);
+			moduleBytes.writeTo(out);
+			out.flush();
+		}
+	}
+
+	/**
+	 * write a bundle of the given modules
+	 */
+	public static void write(Collection<ModuleSummary> modules, OutputStream out) throws IOException {
+		new Writer().write(modules, out);
+	}
+
+}
@@ -0,0 +1,216 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.summaries;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.SyntheticClass;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.ClassTargetSelector;
+import com.ibm.wala.ipa.callgraph.MethodTargetSelector;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.summaries.BypassSyntheticClassLoader;
+import com.ibm.wala.shrikeBT.Constants;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * The allocatable classes of one summary file, registered with the
+ * synthetic loader only once the analysis first calls into or allocates
+ * one of them, which for a library is typically its import.  Scripts
+ * that never touch the library never pay for its classes.  The fields
+ * of the classes, all dynamic fields of the root type, are shared by
+ * every class of a class hierarchy through a {@link PythonSummaryFields}.
+ */
+public class PythonSummaryClasses {
+
+	private final IClassHierarchy cha;
+	private final PythonSummaryFields fields;
+	private final Set<TypeReference> allocatable;
+	private final Set<TypeName> names = HashSetFactory.make();
+	private volatile boolean registered = false;
+
+	public PythonSummaryClasses(PythonSummaryFields fields, Set<TypeReference> allocatable) {
+		this.cha = fields.getClassHierarchy();
+		this.fields = fields;
+		this.allocatable = allocatable;
+		for(TypeReference t : allocatable) {
+			names.add(t.getName());
+		}
+	}
+
+	private boolean isRelevant(TypeReference type) {
+		return type != null && names.contains(type.getName());
+	}
+
+	/**
+	 * register every class of the summary file that is not registered
+	 * yet, in the synthetic loader of the class hierarchy
+	 */
+	public synchronized void register() {
+		if (registered) {
+			return;
+		}
+
+		BypassSyntheticClassLoader ldr = (BypassSyntheticClassLoader) cha.getLoader(cha.getScope().getSyntheticLoader());
+		for(TypeReference t : allocatable) {
+			if (ldr.lookupClass(t.getName()) == null) {
+				ldr.registerClass(t.getName(), new SummaryClass(t, cha, fields));
+			}
+		}
+		registered = true;
+	}
+
+	/**
+	 * @return the given selector, preceded by registration of the classes
+	 * whenever a call is to a method of one of them
+	 */
+	public MethodTargetSelector registerOnDemand(MethodTargetSelector base) {
+		return new MethodTargetSelector() {
+			@Override
+			public IMethod getCalleeTarget(CGNode caller, CallSiteReference site, IClass receiver) {
+				if (! registered && 
+					(isRelevant(site.getDeclaredTarget().getDeclaringClass()) ||
+					 (receiver != null && isRelevant(receiver.getReference())))) {
+					register();
+				}
+				return base.getCalleeTarget(caller, site, receiver);
+			}
+		};
+	}
+
+	/**
+	 * @return the given selector, preceded by registration of the classes
+	 * whenever one of them is allocated
+	 */
+	public ClassTargetSelector registerOnDemand(ClassTargetSelector base) {
+		return new ClassTargetSelector() {
+			@Override
+			public IClass getAllocatedTarget(CGNode caller, NewSiteReference site) {
+				if (! registered && isRelevant(site.getDeclaredType())) {
+					register();
+				}
+				return base.getAllocatedTarget(caller, site);
+			}
+		};
+	}
+
+	private static class SummaryClass extends SyntheticClass {
+		private final PythonSummaryFields fields;
+
+		private SummaryClass(TypeReference T, IClassHierarchy cha, PythonSummaryFields fields) {
+			super(T, cha);
+			this.fields = fields;
+		}
+
+		@Override
+		public IClassLoader getClassLoader() {
+			return getClassHierarchy().getLoader(getClassHierarchy().getScope().getSyntheticLoader());
+		}
+
+		@Override
+		public boolean isPublic() {
+			return true;
+		}
+
+		@Override
+		public boolean isPrivate() {
+			return false;
+		}
+
+		@Override
+		public int getModifiers() throws UnsupportedOperationException {
+			return Constants.ACC_PUBLIC;
+		}
+
+		@Override
+		public IClass getSuperclass() {
+			return getClassHierarchy().lookupClass(PythonTypes.CodeBody);
+		}
+
+		@Override
+		public Collection<? extends IClass> getDirectInterfaces() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Collection<IClass> getAllImplementedInterfaces() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public IMethod getMethod(Selector selector) {
+			return null;
+		}
+
+		@Override
+		public IField getField(Atom name) {
+			return fields.get(name);
+		}
+
+		@Override
+		public IMethod getClassInitializer() {
+			return null;
+		}
+
+		@Override
+		public Collection<? extends IMethod> getDeclaredMethods() {
+			return null;
+		}
+
+		@Override
+		public Collection<IField> getAllInstanceFields() {
+			return fields.getAll();
+		}
+
+		@Override
+		public Collection<IField> getAllStaticFields() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Collection<IField> getAllFields() {
+			return fields.getAll();
+		}
+
+		@Override
+		public Collection<? extends IMethod> getAllMethods() {
+			return null;
+		}
+
+		@Override
+		public Collection<IField> getDeclaredInstanceFields() {
+			return fields.getAll();
+		}
+
+		@Override
+		public Collection<IField> getDeclaredStaticFields() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public boolean isReferenceType() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.summaries;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import com.ibm.wala.cast.loader.AstDynamicField;
+import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * The fields of the summary classes of one class hierarchy, all dynamic
+ * fields of the root type, made once per name and shared by every
+ * summary class.  The table lives as long as whoever analyzes with the
+ * class hierarchy keeps it.
+ */
+public class PythonSummaryFields {
+
+	private final IClassHierarchy cha;
+	private final Map<Atom, IField> fields = HashMapFactory.make();
+
+	public PythonSummaryFields(IClassHierarchy cha) {
+		this.cha = cha;
+	}
+
+	public IClassHierarchy getClassHierarchy() {
+		return cha;
+	}
+
+	public synchronized IField get(Atom name) {
+		IField f = fields.get(name);
+		if (f == null) {
+			fields.put(name, f = new AstDynamicField(false, cha.lookupClass(PythonTypes.Root), name, PythonTypes.Root));
+		}
+		return f;
+	}
+
+	/**
+	 * @return the fields made so far
+	 */
+	public synchronized Collection<IField> getAll() {
+		return new ArrayList<>(fields.values());
+	}
+}
@@ -0,0 +1,101 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ipa.summaries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.summaries.MethodSummary;
+import com.ibm.wala.ipa.summaries.XMLMethodSummaryReader;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * The XML method summaries of the process, each parsed the first time
+ * an analysis asks for it and shared, read only, by every analysis
+ * after that.  The summaries refer to types only by name and loader
+ * name, so they hold for any scope with the standard Python loaders.
+ */
+public class PythonSummaryRepository {
+
+	public static class Summaries {
+		private final Map<MethodReference, MethodSummary> summaries;
+		private final Set<TypeReference> allocatableClasses;
+		private final Set<Atom> ignoredPackages;
+
+		private Summaries(XMLMethodSummaryReader xml) {
+			this.summaries = Collections.unmodifiableMap(xml.getSummaries());
+			this.allocatableClasses = Collections.unmodifiableSet(xml.getAllocatableClasses());
+			this.ignoredPackages = Collections.unmodifiableSet(xml.getIgnoredPackages());
+		}
+
+		public Map<MethodReference, MethodSummary> getSummaries() {
+			return summaries;
+		}
+
+		public Set<TypeReference> getAllocatableClasses() {
+			return allocatableClasses;
+		}
+
+		public Set<Atom> getIgnoredPackages() {
+			return ignoredPackages;
+		}
+	}
+
+	private static final Map<Pair<ClassLoader, String>, Summaries> parsed = new ConcurrentHashMap<>();
+
+	private static final AtomicInteger parses = new AtomicInteger();
+
+	/**
+	 * @param loader the class loader from which to read the resource
+	 * @param resource the name of the XML summary resource
+	 * @param scope the scope to parse it in, if it is not yet parsed
+	 * @throws IllegalArgumentException if the resource is missing or
+	 * cannot be read
+	 */
+	public static Summaries get(ClassLoader loader, String resource, AnalysisScope scope) {
+		return parsed.computeIfAbsent(Pair.make(loader, resource), (key) -> {
+			try (InputStream s = loader.getResourceAsStream(resource)) {
+				if (s == null) {
+					throw new IllegalArgumentException("no summary resource " + resource);
+				}
+				parses.incrementAndGet();
+				return new Summaries(new XMLMethodSummaryReader(s, scope));
+			} catch (IOException e) {
+				throw new IllegalArgumentException("cannot read summary resource " + resource, e);
+			}
+		});
+	}
+
+	/**
+	 * @return the number of summary resources parsed so far
+	 */
+	public static int getParseCount() {
+		return parses.get();
+	}
+
+	/**
+	 * forget every parsed summary, so that the next request reads its
+	 * resource again
+	 */
+	public static void clear() {
+		parsed.clear();
+	}
+
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.ir;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.ibm.wala.cast.loader.AstMethod;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.SSAOptions;
+
+/**
+ * An IR factory that can be asked to build the IR of a batch of code
+ * bodies on other threads ahead of time.  Each IR built ahead is handed
+ * out once, to the first request for it with the same options, and is
+ * identical to the one the underlying factory would have built then;
+ * all other requests go straight to the underlying factory.  Each
+ * factory has its own threads, which its owner stops with
+ * {@link #shutdown()}.
+ */
+public class PrefetchingIRFactory implements IRFactory<IMethod> {
+
+	private static class Prefetch {
+		private final SSAOptions options;
+		private final ForkJoinTask<IR> ir;
+
+		private Prefetch(SSAOptions options, ForkJoinTask<IR> ir) {
+			this.options = options;
+			this.ir = ir;
+		}
+	}
+
+	private final IRFactory<IMethod> delegate;
+
+	private final Map<IMethod,Prefetch> prefetched = new ConcurrentHashMap<>();
+
+	private final Map<IMethod,Boolean> requested = new ConcurrentHashMap<>();
+
+	private ForkJoinPool pool;
+
+	public PrefetchingIRFactory(IRFactory<IMethod> delegate) {
+		this.delegate = delegate;
+	}
+
+	private synchronized ForkJoinTask<IR> submit(int threads, Callable<IR> task) {
+		if (pool == null || pool.getParallelism() != threads) {
+			if (pool != null) {
+				pool.shutdown();
+			}
+			pool = new ForkJoinPool(threads);
+		}
+		return pool.submit(task);
+	}
+
+	/**
+	 * stop the threads of this factory once the IR already asked for is
+	 * built, and forget what was built ahead; the next prefetch starts new
+	 * threads
+	 */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		clear();
+	}
+
+	/**
+	 * forget the IR built ahead and which methods were asked for, as when
+	 * the cache that the IR would have gone into is dropped
+	 */
+	public void clear() {
+		prefetched.clear();
+		requested.clear();
+	}
+
+	/**
+	 * start building the IR of the given methods on the given number of
+	 * threads, skipping those that are synthetic, since their IR can
+	 * change as the analysis proceeds, and those already asked for
+	 */
+	public void prefetch(Iterable<IMethod> methods, SSAOptions options, int threads) {
+		for(IMethod m : methods) {
+			if (m instanceof AstMethod && delegate.contextIsIrrelevant(m) && requested.putIfAbsent(m, true) == null) {
+				prefetched.put(m, new Prefetch(options, submit(threads, () -> delegate.makeIR(m, Everywhere.EVERYWHERE, options))));
+			}
+		}
+	}
+
+	@Override
+	public IR makeIR(IMethod method, Context c, SSAOptions options) {
+		Prefetch p = prefetched.remove(method);
+		if (p != null && p.options == options) {
+			return p.ir.join();
+		} else {
+			return delegate.makeIR(method, c, options);
+		}
+	}
+
+	@Override
+	public boolean contextIsIrrelevant(IMethod method) {
+		return delegate.contextIsIrrelevant(method);
+	}
+
+}
@@ -262,18 +262,26 @@ public class PythonCAstToIRTranslator extends AstTranslator {
 	}
 
 	
+	/**
+	 * the name of the global that holds the default value of parameter i
+	 * of the function of the given type name
+	 */
+	public static String defaultsGlobalName(String fnTypeName, int i) {
+		return fnTypeName + "_defaults_" + i;
+	}
+
 	@Override
 	protected void leaveFunctionEntity(CAstEntity n, WalkContext context, WalkContext codeContext,
 			CAstVisitor<WalkContext> visitor) {
 		super.leaveFunctionEntity(n, context, codeContext, visitor);
 
-		String fnName = composeEntityName(context, n) + "_defaults";		
+		String fnName = "L" + composeEntityName(context, n);		
 		if (n.getArgumentDefaults() != null) {
 			int first = n.getArgumentCount() - n.getArgumentDefaults().length;
 			for(int i = first; i < n.getArgumentCount(); i++) {
 				CAstNode dflt = n.getArgumentDefaults()[i - first];
 				visitor.visit(dflt, context, visitor);
-			    doGlobalWrite(context, "L" + fnName + "_" + i, PythonTypes.Root, context.getValue(dflt));
+			    doGlobalWrite(context, defaultsGlobalName(fnName, i), PythonTypes.Root, context.getValue(dflt));
 			}
 		}
 	}
@@ -591,7 +599,7 @@ public class PythonCAstToIRTranslator extends AstTranslator {
 			CallSiteReference site = new DynamicCallSiteReference(PythonTypes.CodeBody, pos);
 			int result = context.currentScope().allocateTempValue();
 			int exception = context.currentScope().allocateTempValue();
-			context.cfg().addInstruction(new PythonInvokeInstruction(pos, result, exception, site, args, new Pair[0]));
+			context.cfg().addInstruction(new PythonInvokeInstruction(pos, result, exception, site, args));
 
 		    context.setValue(n, result);
 			return true;
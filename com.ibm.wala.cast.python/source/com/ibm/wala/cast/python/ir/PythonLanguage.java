@@ -61,7 +61,6 @@ import com.ibm.wala.types.FieldReference;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.TypeName;
 import com.ibm.wala.types.TypeReference;
-import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.strings.Atom;
 
 public class PythonLanguage implements Language {
@@ -214,13 +213,12 @@ public class PythonLanguage implements Language {
 		          return new AstGlobalWrite(iindex, global, rhs);
 		        }
 
-				@SuppressWarnings("unchecked")
 				@Override
 				public SSAAbstractInvokeInstruction InvokeInstruction(int iindex, int result, int[] params, int exception,
 						CallSiteReference site, BootstrapMethod bootstrap) {
 					if (site.getDeclaredTarget().getName().equals(AstMethodReference.fnAtom) &&
 						site.getDeclaredTarget().getDescriptor().equals(AstMethodReference.fnDesc)) {
-						return new PythonInvokeInstruction(iindex, result, exception, site, params, new Pair[0]);
+						return new PythonInvokeInstruction(iindex, result, exception, site, params);
 					} else {
 						return super.InvokeInstruction(iindex, result, params, exception, site, bootstrap);
 					}
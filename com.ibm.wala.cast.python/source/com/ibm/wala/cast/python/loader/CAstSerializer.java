@@ -0,0 +1,1002 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.loader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.cast.ir.translator.AbstractClassEntity;
+import com.ibm.wala.cast.ir.translator.AbstractCodeEntity;
+import com.ibm.wala.cast.ir.translator.AbstractFieldEntity;
+import com.ibm.wala.cast.ir.translator.AbstractScriptEntity;
+import com.ibm.wala.cast.python.ir.PythonCAstToIRTranslator;
+import com.ibm.wala.cast.python.parser.PythonSourcePosition;
+import com.ibm.wala.cast.python.parser.SourceText;
+import com.ibm.wala.cast.python.types.PythonTypes;
+import com.ibm.wala.cast.tree.CAst;
+import com.ibm.wala.cast.tree.CAstControlFlowMap;
+import com.ibm.wala.cast.tree.CAstEntity;
+import com.ibm.wala.cast.tree.CAstNode;
+import com.ibm.wala.cast.tree.CAstNodeTypeMap;
+import com.ibm.wala.cast.tree.CAstQualifier;
+import com.ibm.wala.cast.tree.CAstSourcePositionMap;
+import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
+import com.ibm.wala.cast.tree.CAstSymbol;
+import com.ibm.wala.cast.tree.CAstType;
+import com.ibm.wala.cast.tree.impl.CAstOperator;
+import com.ibm.wala.cast.tree.impl.CAstSymbolImpl;
+import com.ibm.wala.cast.tree.impl.CAstTypeDictionaryImpl;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.EmptyIterator;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Writes the rewritten CAst of a module, and reads it back as generic
+ * entities, for {@link TranslatedModuleCache} to keep on disk.  Nodes,
+ * types and entities are written once and referred to by number after
+ * that, so that the node identities the source maps, control flow maps
+ * and scoped entities rely on survive the round trip.
+ *
+ * Only what the Python front end produces is handled; anything else
+ * makes {@link #write} fail, and the module is then only cached in memory.
+ */
+class CAstSerializer {
+
+	private static final int MAGIC = 0x57504341;
+
+	private static final int NEW = -1;
+
+	private static final byte NODE = 0, OPERATOR = 1, EXCEPTION_TO_EXIT = 2;
+
+	private static final byte NULL = 0, STRING = 1, INT = 2, LONG = 3, DOUBLE = 4, FLOAT = 5, BOOLEAN = 6, CHAR = 7, SYMBOL = 8, ENTITY = 9, TYPE = 10, TYPE_REFERENCE = 11, SWITCH_DEFAULT = 12;
+
+	private static final byte DYNAMIC = 0, ANY = 1, PLAIN = 2, FUNCTION = 3, METHOD = 4, CLASS = 5;
+
+	private static final Map<CAstOperator,String> operatorNames = new IdentityHashMap<>();
+	private static final Map<String,CAstOperator> operators = HashMapFactory.make();
+	static {
+		for(Field f : CAstOperator.class.getFields()) {
+			if (Modifier.isStatic(f.getModifiers()) && f.getType() == CAstOperator.class) {
+				try {
+					CAstOperator op = (CAstOperator) f.get(null);
+					operatorNames.put(op, f.getName());
+					operators.put(f.getName(), op);
+				} catch (IllegalAccessException e) {
+					assert false : e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * thrown for CAst that this format cannot represent
+	 */
+	static class UnsupportedCAstException extends IOException {
+		private static final long serialVersionUID = 6110238946395287187L;
+
+		private UnsupportedCAstException(Object what) {
+			super("cannot store " + what);
+		}
+	}
+
+	static void write(TranslatedModuleCache.Entry entry, DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(TranslatedModuleCache.getVersion());
+		Writer w = new Writer(out);
+		out.writeInt(entry.types.size());
+		for(Map.Entry<String,CAstType> t : entry.types.entrySet()) {
+			out.writeUTF(t.getKey());
+			w.writeType(t.getValue());
+		}
+		w.writeEntity(entry.entity);
+	}
+
+	static TranslatedModuleCache.Entry read(DataInputStream in, CAst ast, URL url, SourceText text, CAstTypeDictionaryImpl<String> dictionary) throws IOException {
+		if (in.readInt() != MAGIC || !TranslatedModuleCache.getVersion().equals(in.readUTF())) {
+			throw new IOException("not a stored translation of this version");
+		}
+		Reader r = new Reader(in, ast, new PythonSourcePosition.Segment(url, text), dictionary);
+		Map<String,CAstType> types = HashMapFactory.make();
+		for(int i = in.readInt(); i > 0; i--) {
+			String name = in.readUTF();
+			types.put(name, r.readType());
+		}
+		CAstEntity entity = r.readEntity(null);
+		return new TranslatedModuleCache.Entry(entity, types);
+	}
+
+	private static class Writer {
+		private final DataOutputStream out;
+		private final Map<Object,Integer> nodes = new IdentityHashMap<>();
+		private final Map<Object,Integer> types = new IdentityHashMap<>();
+		private final Map<Object,Integer> entities = new IdentityHashMap<>();
+
+		private Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		private boolean writeRef(Map<Object,Integer> ids, Object x) throws IOException {
+			Integer id = ids.get(x);
+			if (id != null) {
+				out.writeInt(id);
+				return true;
+			} else {
+				ids.put(x, ids.size());
+				out.writeInt(NEW);
+				return false;
+			}
+		}
+
+		private void writeNode(CAstNode n) throws IOException {
+			if (n == null) {
+				out.writeBoolean(false);
+				return;
+			}
+			out.writeBoolean(true);
+			if (writeRef(nodes, n)) {
+				return;
+			}
+
+			if (n == CAstControlFlowMap.EXCEPTION_TO_EXIT) {
+				out.writeByte(EXCEPTION_TO_EXIT);
+			} else if (n instanceof CAstOperator) {
+				String name = operatorNames.get(n);
+				if (name == null) {
+					throw new UnsupportedCAstException(n);
+				}
+				out.writeByte(OPERATOR);
+				out.writeUTF(name);
+			} else {
+				out.writeByte(NODE);
+				out.writeInt(n.getKind());
+				if (n.getKind() == CAstNode.CONSTANT) {
+					writeValue(n.getValue());
+				} else {
+					if (n.getValue() != null) {
+						throw new UnsupportedCAstException(n);
+					}
+					out.writeInt(n.getChildCount());
+					for(int i = 0; i < n.getChildCount(); i++) {
+						writeNode(n.getChild(i));
+					}
+				}
+			}
+		}
+
+		private void writeNodes(CAstNode[] ns) throws IOException {
+			if (ns == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(ns.length);
+				for(CAstNode n : ns) {
+					writeNode(n);
+				}
+			}
+		}
+
+		private void writeValue(Object v) throws IOException {
+			if (v == null) {
+				out.writeByte(NULL);
+			} else if (v instanceof String) {
+				out.writeByte(STRING);
+				out.writeUTF((String)v);
+			} else if (v instanceof Integer) {
+				out.writeByte(INT);
+				out.writeInt((Integer)v);
+			} else if (v instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long)v);
+			} else if (v instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double)v);
+			} else if (v instanceof Float) {
+				out.writeByte(FLOAT);
+				out.writeFloat((Float)v);
+			} else if (v instanceof Boolean) {
+				out.writeByte(BOOLEAN);
+				out.writeBoolean((Boolean)v);
+			} else if (v instanceof Character) {
+				out.writeByte(CHAR);
+				out.writeChar((Character)v);
+			} else if (v instanceof CAstSymbol) {
+				CAstSymbol s = (CAstSymbol)v;
+				if (s.defaultInitValue() != null) {
+					throw new UnsupportedCAstException(s);
+				}
+				out.writeByte(SYMBOL);
+				out.writeUTF(s.name());
+				out.writeBoolean(s.isFinal());
+				out.writeBoolean(s.isCaseInsensitive());
+				writeType(s.type());
+			} else if (v instanceof CAstEntity) {
+				out.writeByte(ENTITY);
+				writeEntity((CAstEntity)v);
+			} else if (v instanceof CAstType) {
+				out.writeByte(TYPE);
+				writeType((CAstType)v);
+			} else if (v instanceof TypeReference) {
+				TypeReference t = (TypeReference)v;
+				if (! PythonTypes.pythonLoader.equals(t.getClassLoader())) {
+					throw new UnsupportedCAstException(t);
+				}
+				out.writeByte(TYPE_REFERENCE);
+				out.writeUTF(t.getName().toString());
+			} else if (v == CAstControlFlowMap.SWITCH_DEFAULT) {
+				out.writeByte(SWITCH_DEFAULT);
+			} else {
+				throw new UnsupportedCAstException(v);
+			}
+		}
+
+		private void writeTypes(Collection<CAstType> ts) throws IOException {
+			out.writeInt(ts.size());
+			for(CAstType t : ts) {
+				writeType(t);
+			}
+		}
+
+		private void writeType(CAstType t) throws IOException {
+			if (t == null) {
+				out.writeBoolean(false);
+				return;
+			}
+			out.writeBoolean(true);
+			if (writeRef(types, t)) {
+				return;
+			}
+
+			if (t == CAstType.DYNAMIC) {
+				out.writeByte(DYNAMIC);
+			} else if (t == PythonCAstToIRTranslator.Any) {
+				out.writeByte(ANY);
+			} else if (t instanceof CAstType.Class) {
+				// resolved again by name when read, as the parser does
+				out.writeByte(CLASS);
+				out.writeUTF(t.getName());
+				Collection<CAstType> supers = t.getSupertypes();
+				out.writeInt(supers.size());
+				for(CAstType s : supers) {
+					out.writeUTF(s.getName());
+				}
+			} else if (t instanceof CAstType.Function) {
+				CAstType.Function f = (CAstType.Function)t;
+				out.writeByte(t instanceof CAstType.Method? METHOD: FUNCTION);
+				out.writeUTF(t.getName());
+				writeTypes(t.getSupertypes());
+				writeType(f.getReturnType());
+				writeTypes(f.getArgumentTypes());
+				writeTypes(f.getExceptionTypes());
+				out.writeInt(f.getArgumentCount());
+				if (t instanceof CAstType.Method) {
+					writeType(((CAstType.Method)t).getDeclaringType());
+					out.writeBoolean(((CAstType.Method)t).isStatic());
+				}
+			} else {
+				out.writeByte(PLAIN);
+				out.writeUTF(t.getName());
+				writeTypes(t.getSupertypes());
+			}
+		}
+
+		private void writePosition(Position p) throws IOException {
+			if (p == null) {
+				out.writeBoolean(false);
+			} else if (p instanceof PythonSourcePosition) {
+				out.writeBoolean(true);
+				out.writeInt(p.getFirstLine());
+				out.writeInt(p.getFirstCol());
+				out.writeInt(p.getFirstOffset());
+				out.writeInt(p.getLastOffset());
+			} else {
+				throw new UnsupportedCAstException(p);
+			}
+		}
+
+		private void writeEntity(CAstEntity e) throws IOException {
+			if (writeRef(entities, e)) {
+				return;
+			}
+
+			int kind = e.getKind();
+			if (kind != CAstEntity.SCRIPT_ENTITY && kind != CAstEntity.FUNCTION_ENTITY && kind != CAstEntity.TYPE_ENTITY && kind != CAstEntity.FIELD_ENTITY) {
+				throw new UnsupportedCAstException(e);
+			}
+			if (! e.getQualifiers().isEmpty()) {
+				throw new UnsupportedCAstException(e.getQualifiers());
+			}
+
+			out.writeInt(kind);
+			out.writeUTF(e.getName());
+			writeType(e.getType());
+			int argumentCount = e.getArgumentCount();
+			out.writeInt(argumentCount);
+			String[] names = e.getArgumentNames();
+			out.writeInt(names == null? -1: names.length);
+			if (names != null) {
+				for(String n : names) {
+					out.writeUTF(n);
+				}
+			}
+			writeNodes(e.getArgumentDefaults());
+
+			writePosition(e.getPosition());
+			writePosition(e.getNamePosition());
+			if (kind == CAstEntity.FUNCTION_ENTITY) {
+				for(int i = 0; i < argumentCount - 1; i++) {
+					writePosition(e.getPosition(i));
+				}
+			}
+
+			writeNode(e.getAST());
+
+			Map<CAstNode, Collection<CAstEntity>> scoped = e.getAllScopedEntities();
+			out.writeInt(scoped.size());
+			for(Map.Entry<CAstNode, Collection<CAstEntity>> s : scoped.entrySet()) {
+				writeNode(s.getKey());
+				out.writeInt(s.getValue().size());
+				for(CAstEntity child : s.getValue()) {
+					writeEntity(child);
+				}
+			}
+
+			if (kind == CAstEntity.SCRIPT_ENTITY || kind == CAstEntity.FUNCTION_ENTITY) {
+				writeMaps(e);
+			} else if (! isEmpty(e.getSourceMap()) || ! isEmpty(e.getControlFlow()) || ! isEmpty(e.getNodeTypeMap())) {
+				throw new UnsupportedCAstException(e);
+			}
+		}
+
+		private void writeMaps(CAstEntity e) throws IOException {
+			CAstSourcePositionMap src = e.getSourceMap();
+			List<CAstNode> positioned = new ArrayList<>();
+			if (src != null) {
+				for(Iterator<CAstNode> ns = src.getMappedNodes(); ns.hasNext(); ) {
+					positioned.add(ns.next());
+				}
+			}
+			out.writeInt(positioned.size());
+			for(CAstNode n : positioned) {
+				writeNode(n);
+				writePosition(src.getPosition(n));
+			}
+
+			CAstControlFlowMap cfg = e.getControlFlow();
+			Collection<CAstNode> mapped = cfg == null? Collections.emptySet(): cfg.getMappedNodes();
+			out.writeInt(mapped.size());
+			for(CAstNode n : mapped) {
+				writeNode(n);
+			}
+			for(CAstNode from : mapped) {
+				Collection<Object> labels = cfg.getTargetLabels(from);
+				out.writeInt(labels.size());
+				for(Object label : labels) {
+					if (label instanceof CAstNode) {
+						out.writeBoolean(true);
+						writeNode((CAstNode)label);
+					} else {
+						out.writeBoolean(false);
+						writeValue(label);
+					}
+					writeNode(cfg.getTarget(from, label));
+				}
+			}
+
+			CAstNodeTypeMap types = e.getNodeTypeMap();
+			Collection<CAstNode> typed = types == null? Collections.emptySet(): types.getNodesWithTypes();
+			out.writeInt(typed.size());
+			for(CAstNode n : typed) {
+				writeNode(n);
+				writeType(types.getNodeType(n));
+			}
+		}
+
+		private static boolean isEmpty(CAstSourcePositionMap map) {
+			return map == null || ! map.getMappedNodes().hasNext();
+		}
+
+		private static boolean isEmpty(CAstControlFlowMap map) {
+			return map == null || map.getMappedNodes().isEmpty();
+		}
+
+		private static boolean isEmpty(CAstNodeTypeMap map) {
+			return map == null || map.getNodesWithTypes().isEmpty();
+		}
+	}
+
+	/**
+	 * scope, positions and AST of an entity that has been read back
+	 */
+	private static class Stored {
+		private final Map<CAstNode, Collection<CAstEntity>> scoped = HashMapFactory.make();
+		private Position position;
+		private Position namePosition;
+		private Position[] argumentPositions = new Position[0];
+		private CAstNode ast;
+		private String name;
+		private String[] argumentNames;
+		private CAstNode[] argumentDefaults;
+		private int argumentCount;
+
+		private Iterator<CAstEntity> getScopedEntities(CAstNode construct) {
+			return scoped.containsKey(construct)? scoped.get(construct).iterator(): EmptyIterator.instance();
+		}
+
+		private Position getPosition(int arg) {
+			return arg >= 0 && arg < argumentPositions.length? argumentPositions[arg]: null;
+		}
+	}
+
+	private static class StoredFunctionEntity extends AbstractCodeEntity {
+		private final Stored s;
+
+		private StoredFunctionEntity(CAstType type, Stored s) {
+			super(type);
+			this.s = s;
+		}
+
+		private void map(CAstNode n) {
+			if (! cfg.isMapped(n)) {
+				cfg.map(n, n);
+			}
+		}
+
+		@Override
+		public int getKind() {
+			return CAstEntity.FUNCTION_ENTITY;
+		}
+
+		@Override
+		public String getName() {
+			return s.name;
+		}
+
+		@Override
+		public String[] getArgumentNames() {
+			return s.argumentNames;
+		}
+
+		@Override
+		public CAstNode[] getArgumentDefaults() {
+			return s.argumentDefaults;
+		}
+
+		@Override
+		public int getArgumentCount() {
+			return s.argumentCount;
+		}
+
+		@Override
+		public Collection<CAstQualifier> getQualifiers() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public CAstNode getAST() {
+			return s.ast;
+		}
+
+		@Override
+		public Map<CAstNode, Collection<CAstEntity>> getAllScopedEntities() {
+			return s.scoped;
+		}
+
+		@Override
+		public Iterator<CAstEntity> getScopedEntities(CAstNode construct) {
+			return s.getScopedEntities(construct);
+		}
+
+		@Override
+		public Position getPosition() {
+			return s.position;
+		}
+
+		@Override
+		public Position getPosition(int arg) {
+			return s.getPosition(arg);
+		}
+
+		@Override
+		public Position getNamePosition() {
+			return s.namePosition;
+		}
+	}
+
+	private static class StoredScriptEntity extends AbstractScriptEntity {
+		private final Stored s;
+
+		private StoredScriptEntity(CAstType type, Stored s) {
+			super(s.name, type);
+			this.s = s;
+		}
+
+		private void map(CAstNode n) {
+			if (! cfg.isMapped(n)) {
+				cfg.map(n, n);
+			}
+		}
+
+		@Override
+		public CAstNode getAST() {
+			return s.ast;
+		}
+
+		@Override
+		public Map<CAstNode, Collection<CAstEntity>> getAllScopedEntities() {
+			return s.scoped;
+		}
+
+		@Override
+		public Iterator<CAstEntity> getScopedEntities(CAstNode construct) {
+			return s.getScopedEntities(construct);
+		}
+
+		@Override
+		public Position getPosition() {
+			return s.position;
+		}
+
+		@Override
+		public Position getPosition(int arg) {
+			return s.getPosition(arg);
+		}
+
+		@Override
+		public Position getNamePosition() {
+			return s.namePosition;
+		}
+	}
+
+	private static class Reader {
+		private final DataInputStream in;
+		private final CAst ast;
+		private final PythonSourcePosition.Segment segment;
+		private final CAstTypeDictionaryImpl<String> dictionary;
+		private final List<CAstNode> nodes = new ArrayList<>();
+		private final List<CAstType> types = new ArrayList<>();
+		private final List<CAstEntity> entities = new ArrayList<>();
+
+		private Reader(DataInputStream in, CAst ast, PythonSourcePosition.Segment segment, CAstTypeDictionaryImpl<String> dictionary) {
+			this.in = in;
+			this.ast = ast;
+			this.segment = segment;
+			this.dictionary = dictionary;
+		}
+
+		private CAstNode readNode() throws IOException {
+			if (! in.readBoolean()) {
+				return null;
+			}
+			int id = in.readInt();
+			if (id != NEW) {
+				return nodes.get(id);
+			}
+
+			int slot = nodes.size();
+			nodes.add(null);
+			CAstNode n;
+			switch (in.readByte()) {
+			case EXCEPTION_TO_EXIT:
+				n = CAstControlFlowMap.EXCEPTION_TO_EXIT;
+				break;
+			case OPERATOR: {
+				String name = in.readUTF();
+				n = operators.get(name);
+				if (n == null) {
+					throw new IOException("unknown operator " + name);
+				}
+				break;
+			}
+			default: {
+				int kind = in.readInt();
+				if (kind == CAstNode.CONSTANT) {
+					n = ast.makeConstant(readValue());
+				} else {
+					CAstNode[] children = new CAstNode[ in.readInt() ];
+					for(int i = 0; i < children.length; i++) {
+						children[i] = readNode();
+					}
+					n = ast.makeNode(kind, children);
+				}
+			}
+			}
+			nodes.set(slot, n);
+			return n;
+		}
+
+		private CAstNode[] readNodes() throws IOException {
+			int size = in.readInt();
+			if (size == -1) {
+				return null;
+			}
+			CAstNode[] ns = new CAstNode[ size ];
+			for(int i = 0; i < size; i++) {
+				ns[i] = readNode();
+			}
+			return ns;
+		}
+
+		private Object readValue() throws IOException {
+			switch (in.readByte()) {
+			case NULL:
+				return null;
+			case STRING:
+				return in.readUTF();
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case BOOLEAN:
+				return in.readBoolean();
+			case CHAR:
+				return in.readChar();
+			case SYMBOL: {
+				String name = in.readUTF();
+				boolean isFinal = in.readBoolean();
+				boolean isCaseInsensitive = in.readBoolean();
+				return new CAstSymbolImpl(name, readType(), isFinal, isCaseInsensitive);
+			}
+			case ENTITY:
+				return readEntity(null);
+			case TYPE:
+				return readType();
+			case TYPE_REFERENCE:
+				return TypeReference.findOrCreate(PythonTypes.pythonLoader, TypeName.string2TypeName(in.readUTF()));
+			case SWITCH_DEFAULT:
+				return CAstControlFlowMap.SWITCH_DEFAULT;
+			default:
+				throw new IOException("bad constant");
+			}
+		}
+
+		private List<CAstType> readTypes() throws IOException {
+			List<CAstType> ts = new ArrayList<>();
+			for(int i = in.readInt(); i > 0; i--) {
+				ts.add(readType());
+			}
+			return ts;
+		}
+
+		private CAstType readType() throws IOException {
+			if (! in.readBoolean()) {
+				return null;
+			}
+			int id = in.readInt();
+			if (id != NEW) {
+				return types.get(id);
+			}
+
+			int slot = types.size();
+			types.add(null);
+			CAstType t;
+			byte tag = in.readByte();
+			switch (tag) {
+			case DYNAMIC:
+				t = CAstType.DYNAMIC;
+				break;
+			case ANY:
+				t = PythonCAstToIRTranslator.Any;
+				break;
+			case CLASS: {
+				String name = in.readUTF();
+				List<String> supers = new ArrayList<>();
+				for(int i = in.readInt(); i > 0; i--) {
+					supers.add(in.readUTF());
+				}
+				t = new CAstType.Class() {
+					@Override
+					public String getName() {
+						return name;
+					}
+
+					@Override
+					public Collection<CAstType> getSupertypes() {
+						Collection<CAstType> supertypes = HashSetFactory.make();
+						for(String s : supers) {
+							CAstType type = dictionary.getCAstTypeFor(s);
+							if (type != null) {
+								supertypes.add(type);
+							}
+						}
+						return supertypes;
+					}
+
+					@Override
+					public boolean isInterface() {
+						return false;
+					}
+
+					@Override
+					public Collection<CAstQualifier> getQualifiers() {
+						return Collections.emptySet();
+					}
+				};
+				break;
+			}
+			case FUNCTION:
+			case METHOD: {
+				String name = in.readUTF();
+				List<CAstType> supers = readTypes();
+				CAstType returnType = readType();
+				List<CAstType> argumentTypes = readTypes();
+				List<CAstType> exceptionTypes = readTypes();
+				int argumentCount = in.readInt();
+
+				class StoredFunctionType implements CAstType.Function {
+					@Override
+					public String getName() {
+						return name;
+					}
+
+					@Override
+					public Collection<CAstType> getSupertypes() {
+						return supers;
+					}
+
+					@Override
+					public CAstType getReturnType() {
+						return returnType;
+					}
+
+					@Override
+					public List<CAstType> getArgumentTypes() {
+						return argumentTypes;
+					}
+
+					@Override
+					public Collection<CAstType> getExceptionTypes() {
+						return exceptionTypes;
+					}
+
+					@Override
+					public int getArgumentCount() {
+						return argumentCount;
+					}
+
+					@Override
+					public String toString() {
+						return getName();
+					}
+				}
+
+				if (tag == METHOD) {
+					CAstType declaringType = readType();
+					boolean isStatic = in.readBoolean();
+					class StoredMethodType extends StoredFunctionType implements CAstType.Method {
+						@Override
+						public CAstType getDeclaringType() {
+							return declaringType;
+						}
+
+						@Override
+						public boolean isStatic() {
+							return isStatic;
+						}
+					}
+					t = new StoredMethodType();
+				} else {
+					t = new StoredFunctionType();
+				}
+				break;
+			}
+			case PLAIN: {
+				String name = in.readUTF();
+				List<CAstType> supers = readTypes();
+				t = new CAstType() {
+					@Override
+					public String getName() {
+						return name;
+					}
+
+					@Override
+					public Collection<CAstType> getSupertypes() {
+						return supers;
+					}
+				};
+				break;
+			}
+			default:
+				throw new IOException("bad type");
+			}
+			types.set(slot, t);
+			return t;
+		}
+
+		private Position readPosition() throws IOException {
+			if (! in.readBoolean()) {
+				return null;
+			}
+			int firstLine = in.readInt();
+			int firstCol = in.readInt();
+			int firstOffset = in.readInt();
+			int lastOffset = in.readInt();
+			return new PythonSourcePosition(segment, firstLine, firstCol, firstOffset, lastOffset);
+		}
+
+		private CAstEntity readEntity(CAstEntity parent) throws IOException {
+			int id = in.readInt();
+			if (id != NEW) {
+				return entities.get(id);
+			}
+			int slot = entities.size();
+			entities.add(null);
+
+			Stored s = new Stored();
+			int kind = in.readInt();
+			s.name = in.readUTF();
+			CAstType type = readType();
+			s.argumentCount = in.readInt();
+			int names = in.readInt();
+			if (names != -1) {
+				s.argumentNames = new String[ names ];
+				for(int i = 0; i < names; i++) {
+					s.argumentNames[i] = in.readUTF();
+				}
+			}
+
+			CAstEntity e;
+			switch (kind) {
+			case CAstEntity.SCRIPT_ENTITY:
+				e = new StoredScriptEntity(type, s);
+				break;
+			case CAstEntity.FUNCTION_ENTITY:
+				e = new StoredFunctionEntity(type, s);
+				break;
+			case CAstEntity.TYPE_ENTITY:
+				e = new AbstractClassEntity((CAstType.Class)type) {
+					@Override
+					public int getKind() {
+						return CAstEntity.TYPE_ENTITY;
+					}
+
+					@Override
+					public String getName() {
+						return s.name;
+					}
+
+					@Override
+					public CAstType getType() {
+						return type;
+					}
+
+					@Override
+					public Map<CAstNode, Collection<CAstEntity>> getAllScopedEntities() {
+						return s.scoped;
+					}
+
+					@Override
+					public Iterator<CAstEntity> getScopedEntities(CAstNode construct) {
+						return s.getScopedEntities(construct);
+					}
+
+					@Override
+					public Position getPosition(int arg) {
+						return null;
+					}
+
+					@Override
+					public Position getPosition() {
+						return s.position;
+					}
+
+					@Override
+					public Position getNamePosition() {
+						return s.namePosition;
+					}
+				};
+				break;
+			case CAstEntity.FIELD_ENTITY:
+				e = new AbstractFieldEntity(s.name, Collections.emptySet(), false, parent) {
+					@Override
+					public CAstNode getAST() {
+						return s.ast;
+					}
+
+					@Override
+					public Position getPosition(int arg) {
+						return null;
+					}
+
+					@Override
+					public Position getPosition() {
+						return s.position;
+					}
+
+					@Override
+					public Position getNamePosition() {
+						return s.namePosition;
+					}
+				};
+				break;
+			default:
+				throw new IOException("bad entity kind " + kind);
+			}
+			entities.set(slot, e);
+
+			s.argumentDefaults = readNodes();
+			s.position = readPosition();
+			s.namePosition = readPosition();
+			if (kind == CAstEntity.FUNCTION_ENTITY && s.argumentCount > 1) {
+				s.argumentPositions = new Position[ s.argumentCount - 1 ];
+				for(int i = 0; i < s.argumentPositions.length; i++) {
+					s.argumentPositions[i] = readPosition();
+				}
+			}
+
+			s.ast = readNode();
+
+			for(int i = in.readInt(); i > 0; i--) {
+				CAstNode construct = readNode();
+				Collection<CAstEntity> children = HashSetFactory.make();
+				for(int j = in.readInt(); j > 0; j--) {
+					children.add(readEntity(e));
+				}
+				s.scoped.put(construct, children);
+			}
+
+			if (e instanceof StoredScriptEntity) {
+				StoredScriptEntity script = (StoredScriptEntity)e;
+				readMaps(script, script::map);
+			} else if (e instanceof StoredFunctionEntity) {
+				StoredFunctionEntity function = (StoredFunctionEntity)e;
+				readMaps(function, function::map);
+			}
+
+			return e;
+		}
+
+		private interface Mapper {
+			void map(CAstNode n);
+		}
+
+		private void readMaps(AbstractCodeEntity e, Mapper cfg) throws IOException {
+			for(int i = in.readInt(); i > 0; i--) {
+				CAstNode n = readNode();
+				e.setNodePosition(n, readPosition());
+			}
+
+			List<CAstNode> mapped = new ArrayList<>();
+			for(int i = in.readInt(); i > 0; i--) {
+				CAstNode n = readNode();
+				cfg.map(n);
+				mapped.add(n);
+			}
+			for(CAstNode from : mapped) {
+				for(int i = in.readInt(); i > 0; i--) {
+					Object label = in.readBoolean()? readNode(): readValue();
+					CAstNode to = readNode();
+					e.setLabelledGotoTarget(from, to, label);
+				}
+			}
+
+			for(int i = in.readInt(); i > 0; i--) {
+				CAstNode n = readNode();
+				e.setNodeType(n, readType());
+			}
+		}
+	}
+}
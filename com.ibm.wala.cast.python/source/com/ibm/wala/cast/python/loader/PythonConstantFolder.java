@@ -0,0 +1,285 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.loader;
+
+import java.math.BigInteger;
+
+import com.ibm.wala.cast.tree.impl.CAstOperator;
+
+/**
+ * Folds binary operations on Python constants in Java, following the
+ * semantics of the Jython interpreter the analysis runs with: ints that
+ * overflow are computed as bignums, and '/' floors on ints unless true
+ * division is requested.
+ *
+ * {@link #fold} returns null when Python would raise, or when the result
+ * cannot be represented as a CAst constant; it returns {@link #NOT_HANDLED}
+ * for operators and operands it does not model at all.
+ */
+public class PythonConstantFolder {
+
+	public static final Object NOT_HANDLED = new Object() {
+		@Override
+		public String toString() {
+			return "<not handled>";
+		}
+	};
+
+	private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+	private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+	private static final int MAX_POW_BITS = 256;
+	private static final int MAX_STRING_LENGTH = 1 << 16;
+
+	private static boolean trueDivision = false;
+
+	public static void setTrueDivision(boolean trueDivision) {
+		PythonConstantFolder.trueDivision = trueDivision;
+	}
+
+	private static boolean isInt(Object v) {
+		return v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte || v instanceof Boolean;
+	}
+
+	private static boolean isFloat(Object v) {
+		return v instanceof Double || v instanceof Float;
+	}
+
+	private static long asLong(Object v) {
+		if (v instanceof Boolean) {
+			return ((Boolean)v)? 1: 0;
+		} else {
+			return ((Number)v).longValue();
+		}
+	}
+
+	private static double asDouble(Object v) {
+		if (v instanceof Boolean) {
+			return ((Boolean)v)? 1: 0;
+		} else {
+			return ((Number)v).doubleValue();
+		}
+	}
+
+	private static Object intResult(long v) {
+		if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+			return (int)v;
+		} else {
+			return v;
+		}
+	}
+
+	private static Object intResult(BigInteger v) {
+		if (v.compareTo(MIN_LONG) >= 0 && v.compareTo(MAX_LONG) <= 0) {
+			return intResult(v.longValue());
+		} else {
+			// no CAst constant for bignums
+			return null;
+		}
+	}
+
+	public static Object fold(CAstOperator op, Object lhs, Object rhs) {
+		if (lhs instanceof String || rhs instanceof String) {
+			return foldString(op, lhs, rhs);
+		} else if (isInt(lhs) && isInt(rhs)) {
+			if (lhs instanceof Boolean && rhs instanceof Boolean) {
+				Object b = foldBool(op, (Boolean)lhs, (Boolean)rhs);
+				if (b != NOT_HANDLED) {
+					return b;
+				}
+			}
+			return foldInt(op, asLong(lhs), asLong(rhs));
+		} else if ((isInt(lhs) || isFloat(lhs)) && (isInt(rhs) || isFloat(rhs))) {
+			return foldFloat(op, asDouble(lhs), asDouble(rhs));
+		} else {
+			return NOT_HANDLED;
+		}
+	}
+
+	private static Object foldBool(CAstOperator op, boolean l, boolean r) {
+		if (op == CAstOperator.OP_BIT_AND) {
+			return l & r;
+		} else if (op == CAstOperator.OP_BIT_OR) {
+			return l | r;
+		} else if (op == CAstOperator.OP_BIT_XOR) {
+			return l ^ r;
+		} else {
+			return NOT_HANDLED;
+		}
+	}
+
+	private static Object foldInt(CAstOperator op, long l, long r) {
+		BigInteger bl = BigInteger.valueOf(l);
+		BigInteger br = BigInteger.valueOf(r);
+		if (op == CAstOperator.OP_ADD) {
+			return intResult(bl.add(br));
+		} else if (op == CAstOperator.OP_SUB) {
+			return intResult(bl.subtract(br));
+		} else if (op == CAstOperator.OP_MUL) {
+			return intResult(bl.multiply(br));
+		} else if (op == CAstOperator.OP_DIV) {
+			if (r == 0) {
+				return null;
+			} else if (trueDivision) {
+				return (double)l / (double)r;
+			} else {
+				return intResult(floorDiv(bl, br));
+			}
+		} else if (op == CAstOperator.OP_MOD) {
+			if (r == 0) {
+				return null;
+			} else {
+				return intResult(bl.subtract(floorDiv(bl, br).multiply(br)));
+			}
+		} else if (op == CAstOperator.OP_POW) {
+			if (r < 0) {
+				if (l == 0) {
+					return null;
+				}
+				return Math.pow(l, r);
+			} else if (l == 0 || l == 1 || r == 0) {
+				return intResult(r == 0? 1: l);
+			} else if (l == -1) {
+				return intResult(r % 2 == 0? 1: -1);
+			} else if (r > MAX_POW_BITS || r * (64 - Long.numberOfLeadingZeros(Math.abs(l))) > MAX_POW_BITS) {
+				return null;
+			} else {
+				return intResult(bl.pow((int)r));
+			}
+		} else if (op == CAstOperator.OP_LSH) {
+			if (r < 0) {
+				return null;
+			} else if (l == 0) {
+				return intResult(0);
+			} else if (r > 64) {
+				return null;
+			} else {
+				return intResult(bl.shiftLeft((int)r));
+			}
+		} else if (op == CAstOperator.OP_RSH) {
+			if (r < 0) {
+				return null;
+			} else {
+				return intResult(l >> Math.min(r, 63));
+			}
+		} else if (op == CAstOperator.OP_BIT_AND) {
+			return intResult(l & r);
+		} else if (op == CAstOperator.OP_BIT_OR) {
+			return intResult(l | r);
+		} else if (op == CAstOperator.OP_BIT_XOR) {
+			return intResult(l ^ r);
+		} else {
+			return compare(op, Long.compare(l, r));
+		}
+	}
+
+	private static BigInteger floorDiv(BigInteger l, BigInteger r) {
+		BigInteger[] qr = l.divideAndRemainder(r);
+		if (qr[1].signum() != 0 && qr[1].signum() != r.signum()) {
+			return qr[0].subtract(BigInteger.ONE);
+		} else {
+			return qr[0];
+		}
+	}
+
+	private static Object foldFloat(CAstOperator op, double l, double r) {
+		if (op == CAstOperator.OP_ADD) {
+			return l + r;
+		} else if (op == CAstOperator.OP_SUB) {
+			return l - r;
+		} else if (op == CAstOperator.OP_MUL) {
+			return l * r;
+		} else if (op == CAstOperator.OP_DIV) {
+			return r == 0? null: l / r;
+		} else if (op == CAstOperator.OP_MOD) {
+			if (r == 0) {
+				return null;
+			}
+			double m = l % r;
+			if (m != 0 && (m < 0) != (r < 0)) {
+				m += r;
+			}
+			return m;
+		} else if (op == CAstOperator.OP_POW) {
+			if (l == 0 && r < 0) {
+				return null;
+			} else if (l < 0 && r != Math.rint(r)) {
+				// complex result
+				return null;
+			}
+			return Math.pow(l, r);
+		} else if (op == CAstOperator.OP_LSH || op == CAstOperator.OP_RSH ||
+				op == CAstOperator.OP_BIT_AND || op == CAstOperator.OP_BIT_OR || op == CAstOperator.OP_BIT_XOR) {
+			// TypeError on floats
+			return null;
+		} else if (Double.isNaN(l) || Double.isNaN(r)) {
+			return NOT_HANDLED;
+		} else {
+			return compare(op, l == r? 0: l < r? -1: 1);
+		}
+	}
+
+	private static Object foldString(CAstOperator op, Object lhs, Object rhs) {
+		if (lhs instanceof String && rhs instanceof String) {
+			String l = (String)lhs, r = (String)rhs;
+			if (op == CAstOperator.OP_ADD) {
+				return l.length() + r.length() > MAX_STRING_LENGTH? null: l + r;
+			} else if (op == CAstOperator.OP_IN) {
+				return r.contains(l);
+			} else if (op == CAstOperator.OP_NOT_IN) {
+				return !r.contains(l);
+			} else if (op == CAstOperator.OP_MOD) {
+				// string formatting
+				return NOT_HANDLED;
+			} else {
+				return compare(op, l.compareTo(r));
+			}
+		} else if (op == CAstOperator.OP_MUL && (isInt(lhs) || isInt(rhs))) {
+			String s = (String)(lhs instanceof String? lhs: rhs);
+			long n = asLong(lhs instanceof String? rhs: lhs);
+			if (n <= 0 || s.isEmpty()) {
+				return "";
+			} else if (n > MAX_STRING_LENGTH / s.length()) {
+				return null;
+			} else {
+				StringBuilder sb = new StringBuilder();
+				for(long i = 0; i < n; i++) {
+					sb.append(s);
+				}
+				return sb.toString();
+			}
+		} else if (op == CAstOperator.OP_EQ) {
+			return false;
+		} else if (op == CAstOperator.OP_NE) {
+			return true;
+		} else {
+			return NOT_HANDLED;
+		}
+	}
+
+	private static Object compare(CAstOperator op, int c) {
+		if (op == CAstOperator.OP_EQ) {
+			return c == 0;
+		} else if (op == CAstOperator.OP_NE) {
+			return c != 0;
+		} else if (op == CAstOperator.OP_LT) {
+			return c < 0;
+		} else if (op == CAstOperator.OP_LE) {
+			return c <= 0;
+		} else if (op == CAstOperator.OP_GT) {
+			return c > 0;
+		} else if (op == CAstOperator.OP_GE) {
+			return c >= 0;
+		} else {
+			return NOT_HANDLED;
+		}
+	}
+}
@@ -11,11 +11,18 @@
 package com.ibm.wala.cast.python.loader;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import org.python.core.PyObject;
+import org.python.core.PySystemState;
 
 import com.ibm.wala.cast.ir.translator.AstTranslator.AstLexicalInformation;
 import com.ibm.wala.cast.ir.translator.AstTranslator.WalkContext;
@@ -27,6 +34,7 @@ import com.ibm.wala.cast.loader.AstMethod.DebuggingInformation;
 import com.ibm.wala.cast.loader.CAstAbstractModuleLoader;
 import com.ibm.wala.cast.python.ir.PythonCAstToIRTranslator;
 import com.ibm.wala.cast.python.ir.PythonLanguage;
+import com.ibm.wala.cast.python.parser.IncrementalTranslation;
 import com.ibm.wala.cast.python.parser.PythonModuleParser;
 import com.ibm.wala.cast.python.types.PythonTypes;
 import com.ibm.wala.cast.python.util.PythonUtil;
@@ -42,6 +50,8 @@ import com.ibm.wala.cast.tree.impl.CAstTypeDictionaryImpl;
 import com.ibm.wala.cast.tree.rewrite.AstConstantFolder;
 import com.ibm.wala.cast.tree.rewrite.CAstBasicRewriter.NoKey;
 import com.ibm.wala.cast.tree.rewrite.CAstBasicRewriter.NonCopyingContext;
+import com.ibm.wala.cast.tree.rewrite.CAstRewriter.CopyKey;
+import com.ibm.wala.cast.tree.rewrite.CAstRewriter.RewriteContext;
 import com.ibm.wala.cast.tree.rewrite.CAstRewriterFactory;
 import com.ibm.wala.cast.tree.rewrite.PatternBasedRewriter;
 import com.ibm.wala.cast.types.AstMethodReference;
@@ -54,6 +64,7 @@ import com.ibm.wala.classLoader.IClassLoader;
 import com.ibm.wala.classLoader.IField;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.Language;
+import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.ModuleEntry;
 import com.ibm.wala.classLoader.SourceModule;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
@@ -68,16 +79,50 @@ import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.types.annotations.Annotation;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.strings.Atom;
+import com.ibm.wala.util.warnings.Warning;
 
 public class PythonLoader extends CAstAbstractModuleLoader {
-	private final CAstTypeDictionaryImpl<String> typeDictionary = new CAstTypeDictionaryImpl<String>();
+
+	/**
+	 * type dictionary shared by all modules of this loader; class
+	 * definitions may be mapped from several parser threads at once
+	 */
+	private static class SynchronizedTypeDictionary extends CAstTypeDictionaryImpl<String> {
+
+		@Override
+		public synchronized CAstType getCAstTypeFor(Object astType) {
+			return super.getCAstTypeFor(astType);
+		}
+
+		@Override
+		public synchronized void map(String astType, CAstType castType) {
+			super.map(astType, castType);
+		}
+
+		@Override
+		public synchronized Iterator<CAstType> iterator() {
+			List<CAstType> types = new ArrayList<>();
+			super.iterator().forEachRemaining(types::add);
+			return types.iterator();
+		}
+	}
+
+	private final CAstTypeDictionaryImpl<String> typeDictionary = new SynchronizedTypeDictionary();
+	
+	private final int parallelism;
 	
 	public PythonLoader(IClassHierarchy cha, IClassLoader parent) {
 		super(cha, parent);
+		this.parallelism = 1;
 	}
 
 	public PythonLoader(IClassHierarchy cha) {
+		this(cha, 1);
+	}
+
+	public PythonLoader(IClassHierarchy cha, int parallelism) {
 		super(cha);
+		this.parallelism = parallelism;
 	}
 
 	@Override
@@ -110,9 +155,63 @@ public class PythonLoader extends CAstAbstractModuleLoader {
 		return Ast.makeNode(CAstNode.CALL, Ast.makeNode(CAstNode.VAR, Ast.makeConstant("slice")), args);	
 	}
 	
+	/**
+	 * records the classes a module defines, so that a cached translation
+	 * of it can define them again in a later loader
+	 */
+	private class RecordingTypeDictionary extends CAstTypeDictionaryImpl<String> {
+		private final Map<String,CAstType> mapped = new LinkedHashMap<>();
+		
+		@Override
+		public CAstType getCAstTypeFor(Object astType) {
+			return typeDictionary.getCAstTypeFor(astType);
+		}
+
+		@Override
+		public void map(String astType, CAstType castType) {
+			mapped.put(astType, castType);
+			typeDictionary.map(astType, castType);
+		}
+
+		@Override
+		public Iterator<CAstType> iterator() {
+			return typeDictionary.iterator();
+		}
+	}
+	
 	@Override
 	protected TranslatorToCAst getTranslatorToCAst(CAst ast, ModuleEntry M) throws IOException {
-		RewritingTranslatorToCAst x = new RewritingTranslatorToCAst(M, new PythonModuleParser((SourceModule)M, typeDictionary) {
+		// incremental translation moves the positions of entities it has
+		// handed out, so they cannot be cached by content as well
+		if (! TranslatedModuleCache.isEnabled() || IncrementalTranslation.isEnabled()) {
+			return makeTranslatorToCAst(M, typeDictionary);
+		}
+		
+		return new TranslatorToCAst() {
+			@Override
+			public <C extends RewriteContext<K>, K extends CopyKey<K>> void addRewriter(CAstRewriterFactory<C, K> factory, boolean prepend) {
+				// the loader installs its rewriters on the underlying translator
+			}
+
+			@Override
+			public CAstEntity translateToCAst() throws Error, IOException {
+				String key = TranslatedModuleCache.key((SourceModule)M);
+				TranslatedModuleCache.Entry cached = TranslatedModuleCache.get(key, (SourceModule)M, ast, typeDictionary);
+				if (cached != null) {
+					cached.types.forEach(typeDictionary::map);
+					return cached.entity;
+				}
+				
+				RecordingTypeDictionary types = new RecordingTypeDictionary();
+				CAstEntity entity = makeTranslatorToCAst(M, types).translateToCAst();
+				TranslatedModuleCache.put(key, entity, types.mapped);
+				return entity;
+			}
+		};
+	}
+	
+	private TranslatorToCAst makeTranslatorToCAst(ModuleEntry M, CAstTypeDictionaryImpl<String> types) {
+		RewritingTranslatorToCAst x = new RewritingTranslatorToCAst(M, new PythonModuleParser((SourceModule)M, types) {
 			@Override
 			public CAstEntity translateToCAst() throws Error, IOException {
 				CAstEntity ce =  super.translateToCAst();
@@ -133,16 +232,19 @@ public class PythonLoader extends CAstAbstractModuleLoader {
 				return new ConstantFoldingRewriter(ast) {
 					@Override
 					protected Object eval(CAstOperator op, Object lhs, Object rhs) {
-						try {
-							PyObject x = PythonUtil.getInterp().eval(lhs + " " + op.getValue() + " " + rhs);
-							if (x.isNumberType()) {
-								System.err.println(lhs + " " + op.getValue() + " " + rhs + " -> " + x.asInt());
-								return x.asInt();
-							}
-						} catch (Exception e) {
-							// interpreter died for some reason, so no information.
+						Object v = PythonConstantFolder.fold(op, lhs, rhs);
+						if (v != PythonConstantFolder.NOT_HANDLED) {
+							return v;
+						}
+						
+						Object x = PythonUtil.evalConstant(lhs + " " + op.getValue() + " " + rhs);
+						if (x instanceof Number) {
+							return ((Number)x).intValue();
+						} else if (x instanceof Boolean) {
+							return ((Boolean)x)? 1: 0;
+						} else {
+							return null;
 						}
-						return null;
 					}
 				};
 			}
@@ -151,6 +253,91 @@ public class PythonLoader extends CAstAbstractModuleLoader {
 		return x;
 	}
 
+	private static class ParsedModule {
+		private final ModuleEntry entry;
+		private CAstEntity entity;
+		private Set<Warning> warnings;
+		
+		private ParsedModule(ModuleEntry entry) {
+			this.entry = entry;
+		}
+	}
+	
+	private void collectSourceEntries(Module module, List<ModuleEntry> entries) {
+		for(Iterator<? extends ModuleEntry> es = module.getEntries(); es.hasNext(); ) {
+			ModuleEntry entry = es.next();
+			if (entry.isModuleFile()) {
+				collectSourceEntries(entry.asModule(), entries);
+			} else if (! entry.isClassFile()) {
+				entries.add(entry);
+			}
+		}
+	}
+	
+	private ParsedModule parse(ModuleEntry entry) {
+		ParsedModule result = new ParsedModule(entry);
+		try {
+			result.entity = getTranslatorToCAst(new CAstImpl(), entry).translateToCAst();
+		} catch (TranslatorToCAst.Error e) {
+			result.warnings = e.warning;
+		} catch (IOException e) {
+			result.warnings = Collections.singleton(new Warning(Warning.SEVERE) {
+				@Override
+				public String getMsg() {
+					return "cannot read " + entry.getName() + ": " + e.getMessage();
+				}
+			});
+		}
+		return result;
+	}
+	
+	/**
+	 * When more than one thread is allowed, modules are parsed and 
+	 * translated to CAst on a fork-join pool.  Translation to IR
+	 * shares the lexical and type state of a single translator, so
+	 * it still happens on the calling thread, in module order.
+	 */
+	@Override
+	public void init(List<Module> modules) {
+		if (parallelism <= 1) {
+			super.init(modules);
+		} else {
+			initInParallel(modules);
+		}
+		TranslatedModuleCache.flush();
+	}
+	
+	private void initInParallel(List<Module> modules) {
+		
+		List<ModuleEntry> entries = new ArrayList<>();
+		for(Module module : modules) {
+			collectSourceEntries(module, entries);
+		}
+
+		// Jython state must exist before parsers are created concurrently
+		PySystemState.initialize();
+		
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<ForkJoinTask<ParsedModule>> parses = new ArrayList<>();
+			for(ModuleEntry entry : entries) {
+				parses.add(pool.submit(() -> parse(entry)));
+			}
+			
+			TranslatorToIR xlatorToIR = initTranslator();
+			for(ForkJoinTask<ParsedModule> parse : parses) {
+				ParsedModule m = parse.join();
+				if (m.warnings != null) {
+					addMessages(m.entry, m.warnings);
+				} else if (shouldTranslate(m.entity)) {
+					xlatorToIR.translate(m.entity, m.entry);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 	@Override
 	protected boolean shouldTranslate(CAstEntity entity) {
 		return true;
@@ -185,17 +372,17 @@ public class PythonLoader extends CAstAbstractModuleLoader {
 
 	final CoreClass trampoline = new CoreClass(PythonTypes.trampoline.getName(), PythonTypes.CodeBody.getName(), this, null);
 
-	public IClass makeCodeBodyType(String name, TypeReference P, CAstSourcePositionMap.Position sourcePosition, CAstEntity entity, WalkContext context) {
+	public synchronized IClass makeCodeBodyType(String name, TypeReference P, CAstSourcePositionMap.Position sourcePosition, CAstEntity entity, WalkContext context) {
 		return new DynamicCodeBody(TypeReference.findOrCreate(PythonTypes.pythonLoader, TypeName.string2TypeName(name)), P, this,
 				sourcePosition, entity, context);
 	}
 
-	public IClass defineFunctionType(String name, CAstSourcePositionMap.Position pos, CAstEntity entity, WalkContext context) {
+	public synchronized IClass defineFunctionType(String name, CAstSourcePositionMap.Position pos, CAstEntity entity, WalkContext context) {
 		CAstType st = entity.getType().getSupertypes().iterator().next();
 		return makeCodeBodyType(name, lookupClass(TypeName.findOrCreate("L" + st.getName())).getReference(), pos, entity, context);
 	}
 
-	public IClass defineMethodType(String name, CAstSourcePositionMap.Position pos, CAstEntity entity, TypeName typeName, WalkContext context) {
+	public synchronized IClass defineMethodType(String name, CAstSourcePositionMap.Position pos, CAstEntity entity, TypeName typeName, WalkContext context) {
 		IClass fun = makeCodeBodyType(name, PythonTypes.CodeBody, pos, entity, context);
 		
 		assert types.containsKey(typeName);
@@ -205,7 +392,7 @@ public class PythonLoader extends CAstAbstractModuleLoader {
 		return fun;
 	}
 
-	public IMethod defineCodeBodyCode(String clsName, AbstractCFG<?, ?> cfg, SymbolTable symtab, boolean hasCatchBlock,
+	public synchronized IMethod defineCodeBodyCode(String clsName, AbstractCFG<?, ?> cfg, SymbolTable symtab, boolean hasCatchBlock,
 			Map<IBasicBlock<SSAInstruction>, TypeReference[]> caughtTypes, boolean hasMonitorOp, AstLexicalInformation lexicalInfo, DebuggingInformation debugInfo, int defaultArgs) {
 		DynamicCodeBody C = (DynamicCodeBody) lookupClass(clsName, cha);
 		assert C != null : clsName;
@@ -242,11 +429,11 @@ public class PythonLoader extends CAstAbstractModuleLoader {
 		}
 	}
 	
-	public void defineType(TypeName cls, TypeName parent, Position sourcePosition) {
+	public synchronized void defineType(TypeName cls, TypeName parent, Position sourcePosition) {
 		new PythonClass(cls, parent, this, sourcePosition);
 	}
 	
-	public void defineField(TypeName cls, CAstEntity field) {
+	public synchronized void defineField(TypeName cls, CAstEntity field) {
 		assert types.containsKey(cls);
 		((PythonClass)types.get(cls)).staticFields.add(new IField() {
 			@Override
@@ -17,6 +17,11 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.ClassLoaderReference;
 
 public class PythonLoaderFactory extends SingleClassLoaderFactory {
+	private int parallelism = 1;
+	
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
 
 	@Override
 	public ClassLoaderReference getTheReference() {
@@ -25,7 +30,7 @@ public class PythonLoaderFactory extends SingleClassLoaderFactory {
 
 	@Override
 	protected IClassLoader makeTheLoader(IClassHierarchy cha) {
-		return new PythonLoader(cha);
+		return new PythonLoader(cha, parallelism);
 	}
 
 }
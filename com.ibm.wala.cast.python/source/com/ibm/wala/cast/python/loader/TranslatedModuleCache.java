@@ -0,0 +1,280 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.loader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.ibm.wala.cast.python.parser.SourceText;
+import com.ibm.wala.cast.tree.CAst;
+import com.ibm.wala.cast.tree.CAstEntity;
+import com.ibm.wala.cast.tree.CAstType;
+import com.ibm.wala.cast.tree.impl.CAstTypeDictionaryImpl;
+import com.ibm.wala.classLoader.SourceFileModule;
+import com.ibm.wala.classLoader.SourceModule;
+
+/**
+ * Process-wide cache of rewritten CAst for source modules, keyed by
+ * the module's location, its content and the version of the code that
+ * translates it.  An unchanged module analyzed again skips parsing,
+ * rewriting and constant folding.
+ *
+ * Entries are held softly, so the cache gives way under memory pressure.
+ * Given a directory, the cache also keeps entries there, in files named
+ * by their keys, so that separate runs (as a linter) share them as well.
+ */
+public class TranslatedModuleCache {
+
+	private static String version = null;
+
+	/**
+	 * the version of the translation: a digest of the code of this loader
+	 * and of WALA's CAst, so that it changes whenever either is rebuilt.
+	 * When that code cannot be read, the version is unique to the process
+	 * and entries on disk are never reused.
+	 */
+	public static synchronized String getVersion() {
+		if (version == null) {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				URL translator = codeOf(TranslatedModuleCache.class);
+				URL cast = codeOf(CAst.class);
+				digestCode(digest, translator);
+				if (! cast.toString().equals(translator.toString())) {
+					digestCode(digest, cast);
+				}
+				version = hex(digest.digest());
+			} catch (IOException | URISyntaxException | NoSuchAlgorithmException | SecurityException e) {
+				version = UUID.randomUUID().toString();
+			}
+		}
+		return version;
+	}
+
+	private static URL codeOf(Class<?> cls) throws IOException {
+		CodeSource source = cls.getProtectionDomain().getCodeSource();
+		URL location = source == null? null: source.getLocation();
+		if (location == null || !"file".equals(location.getProtocol())) {
+			throw new IOException("no code for " + cls);
+		}
+		return location;
+	}
+
+	private static void digestCode(MessageDigest digest, URL location) throws IOException, URISyntaxException {
+		Path root = new File(location.toURI()).toPath();
+		if (Files.isDirectory(root)) {
+			try (Stream<Path> files = Files.walk(root)) {
+				for(Iterator<Path> fs = files.filter(Files::isRegularFile).sorted().iterator(); fs.hasNext(); ) {
+					Path f = fs.next();
+					digest.update(root.relativize(f).toString().getBytes(StandardCharsets.UTF_8));
+					digest.update((byte)0);
+					digest.update(Files.readAllBytes(f));
+				}
+			}
+		} else {
+			digest.update(Files.readAllBytes(root));
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for(byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	private static boolean enabled = false;
+
+	public static void setEnabled(boolean enabled) {
+		TranslatedModuleCache.enabled = enabled;
+		if (! enabled) {
+			clear();
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	private static File directory = null;
+
+	/**
+	 * keep entries in the given directory too, or only in memory when it is null
+	 */
+	public static void setDirectory(File directory) {
+		TranslatedModuleCache.directory = directory;
+		pending.clear();
+	}
+
+	public static File getDirectory() {
+		return directory;
+	}
+
+	private static final AtomicInteger translations = new AtomicInteger();
+
+	/**
+	 * number of modules translated because they were in neither the memory nor the disk cache
+	 */
+	public static int getTranslationCount() {
+		return translations.get();
+	}
+
+	static class Entry {
+		final CAstEntity entity;
+		final Map<String,CAstType> types;
+
+		Entry(CAstEntity entity, Map<String,CAstType> types) {
+			this.entity = entity;
+			this.types = Collections.unmodifiableMap(types);
+		}
+	}
+
+	private static final Map<String,SoftReference<Entry>> cache = new ConcurrentHashMap<>();
+
+	// entries to write to the directory once their loader has finished with them
+	private static final Map<String,Entry> pending = new ConcurrentHashMap<>();
+
+	public static String key(SourceModule M) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			assert false : e;
+			return null;
+		}
+
+		digest.update(getVersion().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+		digest.update(String.valueOf(M.getURL()).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+		digest.update(M.getName().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+
+		try (InputStream in = M.getInputStream()) {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				digest.update(buf, 0, n);
+			}
+		}
+
+		return hex(digest.digest());
+	}
+
+	static Entry get(String key, SourceModule M, CAst ast, CAstTypeDictionaryImpl<String> dictionary) {
+		SoftReference<Entry> ref = cache.get(key);
+		if (ref != null) {
+			Entry e = ref.get();
+			if (e != null) {
+				return e;
+			}
+			cache.remove(key, ref);
+		}
+
+		File dir = directory;
+		if (dir != null) {
+			File file = new File(dir, key);
+			if (file.isFile()) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+					Entry e = CAstSerializer.read(in, ast, M.getURL(), readSourceText(M), dictionary);
+					cache.put(key, new SoftReference<>(e));
+					return e;
+				} catch (IOException e) {
+					// a stale or damaged entry is translated and written again
+					file.delete();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static SourceText readSourceText(SourceModule M) throws IOException {
+		if (M instanceof SourceFileModule) {
+			return SourceText.map(((SourceFileModule)M).getFile());
+		} else {
+			return SourceText.read(new InputStreamReader(M.getInputStream()));
+		}
+	}
+
+	static void put(String key, CAstEntity entity, Map<String,CAstType> types) {
+		translations.incrementAndGet();
+		Entry e = new Entry(entity, types);
+		cache.put(key, new SoftReference<>(e));
+		if (directory != null) {
+			pending.put(key, e);
+		}
+	}
+
+	/**
+	 * write the entries added since the last flush to the directory.  The
+	 * supertypes of classes are looked up lazily by the parser, so this waits
+	 * until the loader that translated them has defined all its types.
+	 */
+	public static void flush() {
+		File dir = directory;
+		for(String key : pending.keySet()) {
+			Entry e = pending.remove(key);
+			if (dir == null || e == null) {
+				continue;
+			}
+
+			Path tmp = null;
+			try {
+				Files.createDirectories(dir.toPath());
+				tmp = Files.createTempFile(dir.toPath(), key, ".tmp");
+				try (OutputStream bytes = Files.newOutputStream(tmp);
+					 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes))) {
+					CAstSerializer.write(e, out);
+				}
+				Files.move(tmp, new File(dir, key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException x) {
+				// modules this cannot represent are only cached in memory
+				if (tmp != null) {
+					tmp.toFile().delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * forget the entries held in memory; those in the directory are kept
+	 */
+	public static void clear() {
+		cache.clear();
+		pending.clear();
+	}
+}
@@ -0,0 +1,393 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.parser;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.python.antlr.PythonTree;
+
+import com.ibm.wala.cast.tree.CAstNode;
+
+/**
+ * Reuse of the CAst for unchanged top-level functions when a module is
+ * translated again, as happens on every document edit in the language
+ * server.
+ *
+ * A module is split into top-level blocks at lines that start in the
+ * first column.  Each function definition block remembers its parse tree
+ * and the CAst it was translated to, keyed by a hash of its text.  When
+ * the module is translated again, blocks whose text is unchanged are
+ * blanked out before parsing.  The remembered CAst of a block that is
+ * still where it was is spliced back into the script; a block that has
+ * moved is translated again from its parse tree, so that it gets new
+ * positions and the CAst handed out before keeps the old ones.
+ */
+public class IncrementalTranslation {
+
+	private static boolean enabled = false;
+
+	public static void setEnabled(boolean enabled) {
+		IncrementalTranslation.enabled = enabled;
+		if (! enabled) {
+			modules.clear();
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * bases for temporary names in fragments, so that they cannot clash
+	 * with names generated for the rest of the script
+	 */
+	private static final int TMP_NAMES_PER_FRAGMENT = 100000;
+
+	private static final Map<String,ModuleState> modules = new ConcurrentHashMap<>();
+
+	static ModuleState state(URL url, String scriptName) {
+		return modules.computeIfAbsent(url + "#" + scriptName, (k) -> new ModuleState());
+	}
+
+	static class Block {
+		final int start;
+		final int end;
+		final int line;
+		final boolean isDef;
+		final int hash;
+
+		private Block(SourceText source, int start, int end, boolean isDef) {
+			this.start = start;
+			this.end = end;
+			this.line = source.getLine(start);
+			this.isDef = isDef;
+			
+			int h = 0;
+			for(int i = start; i < end; i++) {
+				h = 31*h + source.charAt(i);
+			}
+			this.hash = h;
+		}
+	}
+
+	/**
+	 * what translating one top-level function definition did to the script
+	 */
+	static class Fragment {
+		final PythonSourcePosition.Segment segment;
+		// the text the block was parsed from, and where it was in it
+		final SourceText source;
+		final int line;
+		final int offset;
+		final int end;
+		final int tmpBase;
+		final List<Consumer<PythonParser.WalkContext>> effects = new ArrayList<>();
+		PythonTree tree;
+		CAstNode stmt;
+		boolean reusable = true;
+
+		private Fragment(PythonSourcePosition.Segment segment, SourceText source, Block b, int tmpBase) {
+			this.segment = segment;
+			this.source = source;
+			this.line = b.line;
+			this.offset = b.start;
+			this.end = b.end;
+			this.tmpBase = tmpBase;
+		}
+
+		/**
+		 * the same block, to be translated again from its tree for the given segment
+		 */
+		private Fragment(Fragment moved, PythonSourcePosition.Segment segment) {
+			this.segment = segment;
+			this.source = moved.source;
+			this.line = moved.line;
+			this.offset = moved.offset;
+			this.end = moved.end;
+			this.tmpBase = moved.tmpBase;
+			this.tree = moved.tree;
+		}
+
+		private boolean hasText(SourceText text, Block b) {
+			if (end - offset != b.end - b.start) {
+				return false;
+			}
+			for(int i = 0; i < end - offset; i++) {
+				if (source.charAt(offset + i) != text.charAt(b.start + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isAt(Block b) {
+			return segment.getLineDelta() == b.line - line && segment.getOffsetDelta() == b.start - offset;
+		}
+
+		/**
+		 * whether the CAst of this block must be made by translating its tree
+		 */
+		boolean needsTranslation() {
+			return stmt == null;
+		}
+
+		void replay(PythonParser.WalkContext context) {
+			for(Consumer<PythonParser.WalkContext> effect : effects) {
+				effect.accept(context);
+			}
+		}
+	}
+
+	static class ModuleState {
+		private Map<Integer,List<Fragment>> fragments = Collections.emptyMap();
+		private int serial = 0;
+
+		Plan plan(URL url, SourceText text) {
+			return new Plan(this, url, text);
+		}
+	}
+
+	static class Plan {
+		private final ModuleState state;
+		private final URL url;
+		private final SourceText text;
+		private final List<Block> blocks;
+		private final Map<Block,Fragment> reused = new LinkedHashMap<>();
+		private final Map<Integer,List<Fragment>> next = new LinkedHashMap<>();
+		private char[] parseText;
+
+		private Plan(ModuleState state, URL url, SourceText text) {
+			this.state = state;
+			this.url = url;
+			this.text = text;
+			this.blocks = split(text);
+
+			Map<Integer,LinkedList<Fragment>> available = new LinkedHashMap<>();
+			synchronized (state) {
+				state.fragments.forEach((k, v) -> available.put(k, new LinkedList<>(v)));
+			}
+
+			for(Block b : blocks) {
+				if (b.isDef) {
+					Fragment f = take(available.get(b.hash), b);
+					if (f != null) {
+						if (! f.isAt(b)) {
+							f = new Fragment(f, new PythonSourcePosition.Segment(url, text, b.line - f.line, b.start - f.offset));
+						}
+						reused.put(b, f);
+						remember(b, f);
+						if (parseText == null) {
+							parseText = text.toCharArray();
+						}
+						for(int i = b.start; i < b.end; i++) {
+							if (parseText[i] != '\n' && parseText[i] != '\r') {
+								parseText[i] = ' ';
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private Fragment take(LinkedList<Fragment> fs, Block b) {
+			if (fs != null) {
+				for(Iterator<Fragment> i = fs.iterator(); i.hasNext(); ) {
+					Fragment f = i.next();
+					if (f.hasText(text, b)) {
+						i.remove();
+						return f;
+					}
+				}
+			}
+			return null;
+		}
+
+		private void remember(Block b, Fragment f) {
+			next.computeIfAbsent(b.hash, (k) -> new ArrayList<>()).add(f);
+		}
+
+		/**
+		 * the text to parse: the module with reused blocks blanked out
+		 */
+		char[] getParseText() {
+			return parseText != null? parseText: text.chars();
+		}
+
+		/**
+		 * reused blocks, in the order they appear in the module; the ones
+		 * that moved need translating again from their trees
+		 */
+		Iterable<Map.Entry<Block,Fragment>> getReused() {
+			return reused.entrySet();
+		}
+
+		/**
+		 * a new fragment for the function definition block containing the
+		 * given offset, or null if the offset is not in one
+		 */
+		Fragment newFragment(int offset) {
+			Block b = blockAt(offset);
+			if (b == null || !b.isDef || reused.containsKey(b)) {
+				return null;
+			}
+
+			int tmpBase;
+			synchronized (state) {
+				tmpBase = ++state.serial * TMP_NAMES_PER_FRAGMENT;
+			}
+			Fragment f = new Fragment(new PythonSourcePosition.Segment(url, text), text, b, tmpBase);
+			remember(b, f);
+			return f;
+		}
+
+		private Block blockAt(int offset) {
+			int lo = 0, hi = blocks.size() - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				Block b = blocks.get(mid);
+				if (offset < b.start) {
+					hi = mid - 1;
+				} else if (offset >= b.end) {
+					lo = mid + 1;
+				} else {
+					return b;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * keep the fragments of this translation for the next one
+		 */
+		void commit() {
+			next.values().forEach((fs) -> fs.removeIf((f) -> !f.reusable || f.stmt == null || f.tree == null));
+			next.values().removeIf(List::isEmpty);
+			synchronized (state) {
+				state.fragments = next;
+			}
+		}
+	}
+
+	private static boolean startsWithKeyword(SourceText text, int offset, String keyword) {
+		int end = offset + keyword.length();
+		if (end > text.length() || !keyword.equals(text.getText(offset, end))) {
+			return false;
+		}
+		return end == text.length() || !Character.isJavaIdentifierPart(text.charAt(end));
+	}
+
+	private static boolean continuesBlock(SourceText text, int offset) {
+		return startsWithKeyword(text, offset, "else") ||
+			startsWithKeyword(text, offset, "elif") ||
+			startsWithKeyword(text, offset, "except") ||
+			startsWithKeyword(text, offset, "finally");
+	}
+
+	/**
+	 * split a module into top-level blocks: each one starts with a line
+	 * in the first column that is not a comment, a continuation of the
+	 * previous statement or a clause of the previous compound statement,
+	 * and decorators belong to the definition that follows them.
+	 */
+	static List<Block> split(SourceText text) {
+		List<Block> blocks = new ArrayList<>();
+		int n = text.length();
+
+		int blockStart = 0;
+		boolean blockIsDef = false;
+		boolean inDecorators = false;
+
+		int depth = 0;
+		char quote = 0;
+		boolean triple = false;
+		boolean continued = false;
+
+		int i = 0;
+		while (i < n) {
+			// at the start of a physical line
+			if (depth == 0 && quote == 0 && !continued && i < n) {
+				char c = text.charAt(i);
+				if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '#' && c != '\f') {
+					if (inDecorators) {
+						blockIsDef = startsWithKeyword(text, i, "def");
+						inDecorators = c == '@';
+					} else if (! continuesBlock(text, i)) {
+						if (i > blockStart) {
+							blocks.add(new Block(text, blockStart, i, blockIsDef));
+						}
+						blockStart = i;
+						inDecorators = c == '@';
+						blockIsDef = startsWithKeyword(text, i, "def");
+					}
+				}
+			}
+
+			continued = false;
+			while (i < n) {
+				char c = text.charAt(i++);
+				if (quote != 0) {
+					if (c == '\\') {
+						if (i < n && text.charAt(i) == '\r') {
+							i++;
+						}
+						i++;
+					} else if (c == quote) {
+						if (! triple) {
+							quote = 0;
+						} else if (i + 1 < n && text.charAt(i) == quote && text.charAt(i+1) == quote) {
+							i += 2;
+							quote = 0;
+						}
+					} else if (c == '\n') {
+						if (! triple) {
+							// unterminated string
+							quote = 0;
+						}
+						break;
+					}
+				} else if (c == '#') {
+					while (i < n && text.charAt(i) != '\n') {
+						i++;
+					}
+				} else if (c == '\'' || c == '"') {
+					quote = c;
+					triple = i + 1 < n && text.charAt(i) == c && text.charAt(i+1) == c;
+					if (triple) {
+						i += 2;
+					}
+				} else if (c == '(' || c == '[' || c == '{') {
+					depth++;
+				} else if (c == ')' || c == ']' || c == '}') {
+					depth = Math.max(0, depth - 1);
+				} else if (c == '\\' && i < n && (text.charAt(i) == '\n' || text.charAt(i) == '\r')) {
+					continued = true;
+				} else if (c == '\n') {
+					break;
+				}
+			}
+		}
+
+		if (n > blockStart) {
+			blocks.add(new Block(text, blockStart, n, blockIsDef));
+		}
+
+		return blocks;
+	}
+}
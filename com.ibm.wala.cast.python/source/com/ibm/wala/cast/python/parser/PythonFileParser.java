@@ -16,7 +16,6 @@ import java.io.IOException;
 import java.io.Reader;
 import java.net.URL;
 
-import org.python.antlr.runtime.ANTLRFileStream;
 import org.python.core.PyObject;
 
 import com.ibm.wala.cast.tree.CAstEntity;
@@ -40,9 +39,14 @@ public class PythonFileParser extends PythonParser<File> {
 		return fileName.toURI().toURL();
 	}
 	
+	@Override
 	protected WalaPythonParser makeParser() throws IOException {
-        ANTLRFileStream file = new ANTLRFileStream(fileName.getAbsolutePath());
-		return new WalaPythonParser(file, fileName.getAbsolutePath(), null);
+		return new WalaPythonParser(getSourceText(), fileName.getAbsolutePath(), null);
+	}
+
+	@Override
+	protected SourceText readSourceText() throws IOException {
+		return SourceText.map(fileName);
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -15,14 +15,13 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
 
-import org.python.antlr.runtime.ANTLRInputStream;
-import org.python.antlr.runtime.CharStream;
 import org.python.core.PyObject;
 
 import com.ibm.wala.cast.tree.CAstEntity;
 import com.ibm.wala.cast.tree.impl.CAstTypeDictionaryImpl;
 import com.ibm.wala.cast.util.CAstPrinter;
 import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.classLoader.SourceFileModule;
 import com.ibm.wala.classLoader.SourceModule;
 import com.ibm.wala.classLoader.SourceURLModule;
 
@@ -34,9 +33,13 @@ public class PythonModuleParser extends PythonParser<ModuleEntry> {
 		return fileName.getURL();
 	}
 
-	protected WalaPythonParser makeParser() throws IOException {
-		CharStream file = new ANTLRInputStream(fileName.getInputStream());
-		return new WalaPythonParser(file, fileName.getName(), null);
+	@Override
+	protected SourceText readSourceText() throws IOException {
+		if (fileName instanceof SourceFileModule) {
+			return SourceText.map(((SourceFileModule)fileName).getFile());
+		} else {
+			return super.readSourceText();
+		}
 	}
 
 	public PythonModuleParser(SourceModule fileName, CAstTypeDictionaryImpl<String> types) {
@@ -88,6 +88,7 @@ import org.python.antlr.ast.unaryopType;
 import org.python.antlr.base.expr;
 import org.python.antlr.base.slice;
 import org.python.antlr.base.stmt;
+import org.python.antlr.runtime.ANTLRStringStream;
 import org.python.core.PyObject;
 
 import com.ibm.wala.cast.ir.translator.AbstractClassEntity;
@@ -103,7 +104,6 @@ import com.ibm.wala.cast.tree.CAstNode;
 import com.ibm.wala.cast.tree.CAstQualifier;
 import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
 import com.ibm.wala.cast.tree.CAstType;
-import com.ibm.wala.cast.tree.impl.AbstractSourcePosition;
 import com.ibm.wala.cast.tree.impl.CAstControlFlowRecorder;
 import com.ibm.wala.cast.tree.impl.CAstImpl;
 import com.ibm.wala.cast.tree.impl.CAstNodeTypeMapRecorder;
@@ -211,9 +211,106 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 
 	private final CAst Ast = new CAstImpl();
 	
+	/**
+	 * records what translating a top-level function does to the script
+	 * context, so that it can be done again when the function is reused
+	 */
+	private static class FragmentContext implements WalkContext {
+		private final WalkContext parent;
+		private final IncrementalTranslation.Fragment fragment;
+		
+		private final CAstSourcePositionRecorder pos = new CAstSourcePositionRecorder() {
+			@Override
+			public void setPosition(CAstNode n, Position p) {
+				super.setPosition(n, p);
+				fragment.effects.add((c) -> c.pos().setPosition(n, p));
+			}
+		};
+		
+		private final CAstControlFlowRecorder cfg = new CAstControlFlowRecorder(pos) {
+			@Override
+			public void map(Object node, CAstNode ast) {
+				super.map(node, ast);
+				fragment.effects.add((c) -> c.cfg().map(node, ast));
+			}
+			
+			@Override
+			public void add(Object from, Object to, Object label) {
+				super.add(from, to, label);
+				fragment.effects.add((c) -> c.cfg().add(from, to, label));
+			}
+		};
+		
+		private final CAstNodeTypeMapRecorder types = new CAstNodeTypeMapRecorder() {
+			@Override
+			public void add(CAstNode node, CAstType type) {
+				super.add(node, type);
+				fragment.effects.add((c) -> c.getNodeTypeMap().add(node, type));
+			}
+		};
+		
+		private FragmentContext(WalkContext parent, IncrementalTranslation.Fragment fragment) {
+			this.parent = parent;
+			this.fragment = fragment;
+		}
+		
+		@Override
+		public Map<CAstNode, Collection<CAstEntity>> getScopedEntities() {
+			return parent.getScopedEntities();
+		}
+		
+		@Override
+		public PythonTree top() {
+			return parent.top();
+		}
+		
+		@Override
+		public void addScopedEntity(CAstNode newNode, CAstEntity visit) {
+			fragment.effects.add((c) -> c.addScopedEntity(newNode, visit));
+		}
+		
+		@Override
+		public CAstControlFlowRecorder cfg() {
+			return cfg;
+		}
+		
+		@Override
+		public CAstSourcePositionRecorder pos() {
+			return pos;
+		}
+		
+		@Override
+		public CAstNodeTypeMapRecorder getNodeTypeMap() {
+			return types;
+		}
+		
+		@Override
+		public PythonTree getContinueFor(String label) {
+			return parent.getContinueFor(label);
+		}
+		
+		@Override
+		public PythonTree getBreakFor(String label) {
+			return parent.getBreakFor(label);
+		}
+		
+		@Override
+		public CAstEntity entity() {
+			return parent.entity();
+		}
+		
+		@Override
+		public WalkContext getParent() {
+			return parent;
+		}
+	}
+	
 	private class CAstVisitor implements VisitorIF<CAstNode>  {
 		private final PythonParser.WalkContext context;
 		private final WalaPythonParser parser;
+		private final PythonSourcePosition.Segment segment;
+		private final IncrementalTranslation.Plan plan;
+		private final IncrementalTranslation.Fragment fragment;
 		
 		private CAstNode fail(PyObject tree) {
 // pretend it is a no-op for now.
@@ -221,79 +318,20 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 			return Ast.makeNode(CAstNode.EMPTY);
 		}
 		
-		private CAstVisitor(PythonParser.WalkContext context, WalaPythonParser parser) {
+		private CAstVisitor(PythonParser.WalkContext context, WalaPythonParser parser, PythonSourcePosition.Segment segment, IncrementalTranslation.Plan plan, IncrementalTranslation.Fragment fragment) {
 			this.context = context;
 			this.parser = parser;
+			this.segment = segment;
+			this.plan = plan;
+			this.fragment = fragment;
+		}
+		
+		private CAstVisitor(PythonParser.WalkContext context, CAstVisitor parent) {
+			this(context, parent.parser, parent.segment, null, parent.fragment);
 		}
 		
 		private Position makePosition(PythonTree p) {
-			return new AbstractSourcePosition() {
-
-				@Override
-				public URL getURL() {
-					try {
-						return getParsedURL();
-					} catch (IOException e) {
-						assert false : e;
-						return null;
-					}
-				}
-
-				@Override
-				public Reader getReader() throws IOException {
-					return PythonParser.this.getReader();
-				}
-
-				@Override
-				public int getFirstLine() {
-					return p.getLine();
-				}
-
-				@Override
-				public int getFirstCol() {
-					return p.getCharPositionInLine();
-				}
-
-				boolean set_last = false;
-				int last_line;
-				int last_col;
-				
-				private void setLast() {
-					String s = parser.getText(p.getCharStartIndex(), p.getCharStopIndex());
-					String[] lines = s.split("\n");
-					last_line = getFirstLine() + lines.length - 1;
-					if ("".equals(s) || lines.length <= 1) {
-						last_col = getFirstCol() + (getLastOffset() - getFirstOffset());
-					} else {
-						assert (lines.length > 1);
-						last_col = lines[lines.length-1].length();
-					} 
-					set_last = true;
-				}
-				
-				@Override
-				public int getLastLine() {
-					if (! set_last) setLast();
-					return last_line;
-				}
-
-				@Override
-				public int getLastCol() {
-					if (! set_last) setLast();
-					return last_col;
-				}
-
-				@Override
-				public int getFirstOffset() {
-					return p.getCharStartIndex();
-				}
-
-				@Override
-				public int getLastOffset() {
-					return p.getCharStopIndex();
-				}
-				
-			};
+			return new PythonSourcePosition(segment, p.getLine(), p.getCharPositionInLine(), p.getCharStartIndex(), p.getCharStopIndex());
 		}
 		
 		private CAstNode notePosition(CAstNode n, PythonTree p) {
@@ -494,6 +532,10 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 			};
 			//TODO: CURRENTLY THIS WILL NOT BE CORRECT FOR EXTENDING CLASSES IMPORTED FROM ANOTHER MODULE
 			types.map(arg0.getInternalName(), cls);
+			if (fragment != null) {
+				// the class would be missing from the type dictionary of a later translation
+				fragment.reusable = false;
+			}
 			
 			Collection<CAstEntity> members = HashSetFactory.make();
 			
@@ -594,7 +636,7 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 				}				
 			};			
 
-			CAstVisitor v = new CAstVisitor(child, parser);
+			CAstVisitor v = new CAstVisitor(child, this);
 			for(stmt e : arg0.getInternalBody()) {
 				e.accept(v);				
 			}
@@ -749,7 +791,7 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 			Pass b = new Pass();
 			Pass c = new Pass();
 			LoopContext x = new LoopContext(context, b, c);
-			CAstVisitor child = new CAstVisitor(x, parser);
+			CAstVisitor child = new CAstVisitor(x, this);
 
 			CAstNode breakStmt = b.accept(this);
 			context.cfg().map(b, breakStmt);
@@ -951,7 +993,7 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 			};
 
 			PythonParser.FunctionContext child = new PythonParser.FunctionContext(context, fun, function);	
-			CAstVisitor cv = new CAstVisitor(child, parser);
+			CAstVisitor cv = new CAstVisitor(child, this);
 			for(S s : body) {
 				nodes[i++] = s.accept(cv);
 			}
@@ -1298,11 +1340,50 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 		public CAstNode visitModule(Module arg0) throws Exception {
 			java.util.List<CAstNode> elts = new ArrayList<CAstNode>(arg0.getChildCount());
 			defaultImports(elts);
-			for(PythonTree c : arg0.getChildren()) {
-				elts.add(c.accept(this));
+			if (plan == null) {
+				for(PythonTree c : arg0.getChildren()) {
+					elts.add(c.accept(this));
+				}
+			} else {
+				visitModuleIncrementally(arg0, elts);
 			}
 			return Ast.makeNode(CAstNode.BLOCK_EXPR, elts.toArray(new CAstNode[ elts.size() ]));
 		}
+		
+		private void visitModuleIncrementally(Module arg0, java.util.List<CAstNode> elts) throws Exception {
+			Iterator<Map.Entry<IncrementalTranslation.Block, IncrementalTranslation.Fragment>> reused = plan.getReused().iterator();
+			Map.Entry<IncrementalTranslation.Block, IncrementalTranslation.Fragment> next = reused.hasNext()? reused.next(): null;
+			for(PythonTree c : arg0.getChildren()) {
+				int start = c.getCharStartIndex();
+				while (next != null && next.getKey().start <= start) {
+					splice(next.getValue(), elts);
+					next = reused.hasNext()? reused.next(): null;
+				}
+				
+				IncrementalTranslation.Fragment f = c instanceof FunctionDef? plan.newFragment(start): null;
+				if (f != null) {
+					f.tree = c;
+					splice(f, elts);
+				} else {
+					elts.add(c.accept(this));
+				}
+			}
+			
+			while (next != null) {
+				splice(next.getValue(), elts);
+				next = reused.hasNext()? reused.next(): null;
+			}
+		}
+		
+		private void splice(IncrementalTranslation.Fragment f, java.util.List<CAstNode> elts) throws Exception {
+			if (f.needsTranslation()) {
+				CAstVisitor v = new CAstVisitor(new FragmentContext(context, f), parser, f.segment, null, f);
+				v.tmpIndex = f.tmpBase;
+				f.stmt = f.tree.accept(v);
+			}
+			f.replay(context);
+			elts.add(f.stmt);
+		}
 
 		@Override
 		public CAstNode visitName(Name arg0) throws Exception {
@@ -1460,7 +1541,7 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 			}
 				
 			TryCatchContext catches = new TryCatchContext(context, handlers);
-			CAstVisitor child = new CAstVisitor(catches, parser);
+			CAstVisitor child = new CAstVisitor(catches, this);
 			CAstNode block = child.block(arg0.getInternalBody());
 			
 			return Ast.makeNode(CAstNode.TRY,
@@ -1530,7 +1611,7 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 			Pass b = new Pass();
 			Pass c = new Pass();
 			LoopContext x = new LoopContext(context, b, c);
-			CAstVisitor child = new CAstVisitor(x, parser);
+			CAstVisitor child = new CAstVisitor(x, this);
 			
 			if (arg0.getInternalOrelse() == null || arg0.getInternalOrelse().size() == 0) {
 				return
@@ -1605,7 +1686,9 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 		}
 	}
 	
-	protected abstract WalaPythonParser makeParser() throws IOException;
+	protected WalaPythonParser makeParser() throws IOException {
+		return new WalaPythonParser(getSourceText(), scriptName(), null);
+	}
 	
 	protected abstract Reader getReader() throws IOException;
 	
@@ -1615,9 +1698,51 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 
 	private final CAstTypeDictionaryImpl<String> types;
 	
+	private URL url;
+	
+	private SourceText sourceText;
+	
 	protected PythonParser(CAstTypeDictionaryImpl<String> types) {
 		this.types = types;
 	}
+
+	private PythonSourcePosition.Segment segment;
+	
+	private PythonSourcePosition.Segment getSegment() {
+		if (segment == null) {
+			segment = new PythonSourcePosition.Segment(getURL(), getSourceText());
+		}
+		return segment;
+	}
+	
+	private URL getURL() {
+		if (url == null) {
+			try {
+				url = getParsedURL();
+			} catch (IOException e) {
+				assert false : e;
+			}
+		}
+		return url;
+	}
+	
+	protected SourceText readSourceText() throws IOException {
+		return SourceText.read(getReader());
+	}
+	
+	/**
+	 * text of the module, read once and shared by the lexer and all its positions
+	 */
+	protected SourceText getSourceText() {
+		if (sourceText == null) {
+			try {
+				sourceText = readSourceText();
+			} catch (IOException e) {
+				assert false : e;
+			}
+		}
+		return sourceText;
+	}
 	
 	@Override
 	public <C extends RewriteContext<K>, K extends CopyKey<K>> void addRewriter(CAstRewriterFactory<C, K> factory,
@@ -1626,9 +1751,21 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 		
 	}
 
+	protected WalaPythonParser makeParser(char[] text) {
+		return new WalaPythonParser(new ANTLRStringStream(text, text.length), scriptName(), null);
+	}
+	
 	@Override
 	public CAstEntity translateToCAst() throws Error, IOException {
-		WalaPythonParser parser = makeParser();
+		IncrementalTranslation.Plan plan;
+		WalaPythonParser parser;
+		if (IncrementalTranslation.isEnabled()) {
+			plan = IncrementalTranslation.state(getURL(), scriptName()).plan(getURL(), getSourceText());
+			parser = makeParser(plan.getParseText());
+		} else {
+			plan = null;
+			parser = makeParser();
+		}
 		Module pythonAst = (Module)parser.parseModule();
 		try {
 			CAstType scriptType = new CAstType() {
@@ -1653,8 +1790,11 @@ abstract public class PythonParser<T> implements TranslatorToCAst {
 				
 				{
 					context = new PythonParser.FunctionContext(root, this, pythonAst);		
-					visitor = new CAstVisitor(context, parser);
+					visitor = new CAstVisitor(context, parser, getSegment(), plan, null);
 					cast = pythonAst.accept(visitor);
+					if (plan != null) {
+						plan.commit();
+					}
 				}
 				
 				@Override
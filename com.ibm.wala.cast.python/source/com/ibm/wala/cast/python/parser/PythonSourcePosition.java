@@ -0,0 +1,160 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+
+import com.ibm.wala.cast.tree.CAstSourcePositionMap.Position;
+import com.ibm.wala.cast.tree.impl.AbstractSourcePosition;
+import com.ibm.wala.cast.util.SourceBuffer;
+
+/**
+ * A position in a parsed module, backed by the module's {@link SourceText}.
+ * Positions are relative to a {@link Segment}, which lets a top-level block
+ * that has moved within its module be given positions where it now is from
+ * a parse tree of where it was.
+ */
+public class PythonSourcePosition extends AbstractSourcePosition {
+
+	public static class Segment {
+		private final URL url;
+		private final SourceText text;
+		private final int lineDelta;
+		private final int offsetDelta;
+
+		public Segment(URL url, SourceText text) {
+			this(url, text, 0, 0);
+		}
+
+		/**
+		 * a segment of the given text for lines and offsets counted in
+		 * another version of it, where the segment was the given number of
+		 * lines and characters earlier
+		 */
+		Segment(URL url, SourceText text, int lineDelta, int offsetDelta) {
+			this.url = url;
+			this.text = text;
+			this.lineDelta = lineDelta;
+			this.offsetDelta = offsetDelta;
+		}
+
+		int getLineDelta() {
+			return lineDelta;
+		}
+
+		int getOffsetDelta() {
+			return offsetDelta;
+		}
+	}
+
+	private final Segment segment;
+	private final int firstLine;
+	private final int firstCol;
+	private final int firstOffset;
+	private final int lastOffset;
+
+	private int lines = -1;
+	private int lastCol = -1;
+
+	public PythonSourcePosition(Segment segment, int firstLine, int firstCol, int firstOffset, int lastOffset) {
+		this.segment = segment;
+		this.firstLine = firstLine;
+		this.firstCol = firstCol;
+		this.firstOffset = firstOffset;
+		this.lastOffset = lastOffset;
+	}
+
+	public PythonSourcePosition(URL url, SourceText text, int firstLine, int firstCol, int firstOffset, int lastOffset) {
+		this(new Segment(url, text), firstLine, firstCol, firstOffset, lastOffset);
+	}
+
+	public SourceText getSourceText() {
+		return segment.text;
+	}
+
+	public String getText() {
+		return segment.text.getText(getFirstOffset(), getLastOffset());
+	}
+
+	/**
+	 * text of any position, read from the module index when there is one
+	 */
+	public static String getText(Position p) throws IOException {
+		if (p instanceof PythonSourcePosition) {
+			return ((PythonSourcePosition)p).getText();
+		} else {
+			return new SourceBuffer(p).toString();
+		}
+	}
+
+	@Override
+	public URL getURL() {
+		return segment.url;
+	}
+
+	@Override
+	public Reader getReader() throws IOException {
+		return segment.text.getReader();
+	}
+
+	@Override
+	public int getFirstLine() {
+		return firstLine + segment.lineDelta;
+	}
+
+	@Override
+	public int getFirstCol() {
+		return firstCol;
+	}
+
+	private void setLast() {
+		SourceText text = segment.text;
+		int start = getFirstOffset();
+
+		// trailing newlines do not count as lines of the expression
+		int end = getLastOffset();
+		while (end > start && text.charAt(end-1) == '\n') {
+			end--;
+		}
+
+		int n = text.getLine(end) - text.getLine(start);
+		if (n == 0) {
+			lastCol = firstCol + (lastOffset - firstOffset);
+		} else {
+			lastCol = text.getColumn(end);
+		}
+		lines = n;
+	}
+
+	@Override
+	public int getLastLine() {
+		if (lines == -1) setLast();
+		return getFirstLine() + lines;
+	}
+
+	@Override
+	public int getLastCol() {
+		if (lines == -1) setLast();
+		return lastCol;
+	}
+
+	@Override
+	public int getFirstOffset() {
+		return firstOffset + segment.offsetDelta;
+	}
+
+	@Override
+	public int getLastOffset() {
+		return lastOffset + segment.offsetDelta;
+	}
+}
@@ -0,0 +1,136 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.parser;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The text of one module, read once when it is parsed, with a table of
+ * line start offsets, so that positions can recover their text and
+ * line structure without re-reading the module.  The same buffer feeds
+ * the lexer, so it is the only copy of the module that is kept.
+ */
+public class SourceText {
+	private final char[] text;
+	private final int[] lineStarts;
+
+	public SourceText(char[] text) {
+		this.text = text;
+
+		int lines = 1;
+		for(char c : text) {
+			if (c == '\n') {
+				lines++;
+			}
+		}
+
+		lineStarts = new int[lines];
+		int line = 1;
+		for(int i = 0; i < text.length; i++) {
+			if (text[i] == '\n') {
+				lineStarts[line++] = i+1;
+			}
+		}
+	}
+
+	public static SourceText read(Reader r) throws IOException {
+		try {
+			char[] buf = new char[8192];
+			int len = 0, n;
+			while ((n = r.read(buf, len, buf.length - len)) > 0) {
+				len += n;
+				if (len == buf.length) {
+					buf = Arrays.copyOf(buf, buf.length * 2);
+				}
+			}
+			return new SourceText(Arrays.copyOf(buf, len));
+		} finally {
+			r.close();
+		}
+	}
+
+	/**
+	 * decode a file through a read-only mapping of it, so that the only
+	 * buffer on the heap is the decoded text
+	 */
+	public static SourceText map(File file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.decode(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+			char[] text = chars.array();
+			if (chars.arrayOffset() != 0 || chars.remaining() != text.length) {
+				text = Arrays.copyOfRange(text, chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit());
+			}
+			return new SourceText(text);
+		}
+	}
+
+	/**
+	 * the text itself, shared with the lexer; it must not be modified
+	 */
+	char[] chars() {
+		return text;
+	}
+
+	public int length() {
+		return text.length;
+	}
+
+	public char charAt(int offset) {
+		return text[offset];
+	}
+
+	public String getText(int start, int end) {
+		return new String(text, start, end - start);
+	}
+
+	public char[] toCharArray() {
+		return text.clone();
+	}
+
+	public Reader getReader() {
+		return new CharArrayReader(text);
+	}
+
+	public int getLineCount() {
+		return lineStarts.length;
+	}
+
+	/**
+	 * @return the 1-based line containing the given offset
+	 */
+	public int getLine(int offset) {
+		int i = Arrays.binarySearch(lineStarts, offset);
+		return i >= 0? i + 1: -(i + 1);
+	}
+
+	/**
+	 * @return the offset at which the given 1-based line starts
+	 */
+	public int getLineStart(int line) {
+		return lineStarts[line - 1];
+	}
+
+	public int getColumn(int offset) {
+		return offset - getLineStart(getLine(offset));
+	}
+}
@@ -4,20 +4,35 @@ import org.python.antlr.AnalyzingParser;
 import org.python.antlr.PythonLexer;
 import org.python.antlr.PythonParser;
 import org.python.antlr.PythonTokenSource;
+import org.python.antlr.runtime.ANTLRStringStream;
 import org.python.antlr.runtime.CharStream;
 import org.python.antlr.runtime.CommonTokenStream;
 import org.python.antlr.runtime.TokenRewriteStream;
 
 public class WalaPythonParser extends AnalyzingParser {
+	private final SourceText source;
+	
 	private String text = null;
 	
 	public WalaPythonParser(CharStream stream, String filename, String encoding) {
 		super(stream, filename, encoding);
+		this.source = null;
+	}
+
+	/**
+	 * parse straight from the module text, which then also serves {@link #getText(int, int)}
+	 */
+	public WalaPythonParser(SourceText source, String filename, String encoding) {
+		super(new ANTLRStringStream(source.chars(), source.length()), filename, encoding);
+		this.source = source;
 	}
 
 	private TokenRewriteStream tokens;
 	
 	public String getText(int start, int end) {
+		if (source != null) {
+			return source.getText(start, end);
+		}
 		if (text == null) {
 			text = tokens.toOriginalString();
 		}
@@ -28,7 +43,12 @@ public class WalaPythonParser extends AnalyzingParser {
         PythonLexer lexer = new PythonLexer(charStream);
         lexer.setErrorHandler(errorHandler);
         lexer.single = single;
-        CommonTokenStream tokens = this.tokens = new TokenRewriteStream(lexer);
+        CommonTokenStream tokens;
+        if (source != null) {
+            tokens = new CommonTokenStream(lexer);
+        } else {
+            tokens = this.tokens = new TokenRewriteStream(lexer);
+        }
         PythonTokenSource indentedSource = new PythonTokenSource(tokens, filename, single);
         tokens = new CommonTokenStream(indentedSource);
         PythonParser parser = new PythonParser(tokens, encoding);
@@ -10,9 +10,9 @@
  *****************************************************************************/
 package com.ibm.wala.cast.python.ssa;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 import com.ibm.wala.cast.python.types.PythonTypes;
@@ -23,62 +23,121 @@ import com.ibm.wala.ssa.SSAInstructionFactory;
 import com.ibm.wala.ssa.SymbolTable;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.strings.Atom;
 
 public class PythonInvokeInstruction extends SSAAbstractInvokeInstruction {
+	private static final Atom[] NO_KEYWORDS = new Atom[0];
+	private static final int[] NO_USES = new int[0];
+	
 	private final int result;
 	private final int[] positionalParams;
-	private final Pair<String,Integer>[] keywordParams;
+	private final Atom[] keywords;
+	private final int[] keywordUses;
+	private List<String> keywordNames;
 
-	public PythonInvokeInstruction(int iindex, int result, int exception, CallSiteReference site, int[] positionalParams, Pair<String,Integer>[] keywordParams) {
+	public PythonInvokeInstruction(int iindex, int result, int exception, CallSiteReference site, int[] positionalParams, Atom[] keywords, int[] keywordUses) {
 		super(iindex, exception, site);
+		assert keywords.length == keywordUses.length;
 		this.positionalParams = positionalParams;
-		this.keywordParams = keywordParams;
+		this.keywords = keywords;
+		this.keywordUses = keywordUses;
 		this.result = result;
 	}
 
+	public PythonInvokeInstruction(int iindex, int result, int exception, CallSiteReference site, int[] positionalParams) {
+		this(iindex, result, exception, site, positionalParams, NO_KEYWORDS, NO_USES);
+	}
+
+	public PythonInvokeInstruction(int iindex, int result, int exception, CallSiteReference site, int[] positionalParams, Pair<String,Integer>[] keywordParams) {
+		this(iindex, result, exception, site, positionalParams, keywordAtoms(keywordParams), keywordUses(keywordParams));
+	}
+
+	private static Atom[] keywordAtoms(Pair<String,Integer>[] keywordParams) {
+		if (keywordParams.length == 0) {
+			return NO_KEYWORDS;
+		}
+		Atom[] keywords = new Atom[ keywordParams.length ];
+		for(int i = 0; i < keywordParams.length; i++) {
+			keywords[i] = Atom.findOrCreateUnicodeAtom(keywordParams[i].fst);
+		}
+		return keywords;
+	}
+	
+	private static int[] keywordUses(Pair<String,Integer>[] keywordParams) {
+		if (keywordParams.length == 0) {
+			return NO_USES;
+		}
+		int[] uses = new int[ keywordParams.length ];
+		for(int i = 0; i < keywordParams.length; i++) {
+			uses[i] = keywordParams[i].snd;
+		}
+		return uses;
+	}
+	
 	@Override
 	public int getNumberOfPositionalParameters() {
 		return positionalParams.length;
 	}
 
 	public int getNumberOfKeywordParameters() {
-		return keywordParams.length;
+		return keywords.length;
 	}
 
 	public int getNumberOfTotalParameters() {
-		return positionalParams.length + keywordParams.length;
+		return positionalParams.length + keywords.length;
 	}
 	
 	@Override
 	public int getNumberOfUses() {
-		return positionalParams.length + keywordParams.length;
+		return positionalParams.length + keywords.length;
 	}
 
+	/**
+	 * @return the name of the i'th keyword argument
+	 */
+	public Atom getKeyword(int i) {
+		return keywords[i];
+	}
+	
+	/**
+	 * @return the value passed as the i'th keyword argument
+	 */
+	public int getKeywordUse(int i) {
+		return keywordUses[i];
+	}
+	
 	public List<String> getKeywords() {
-		List<String> names = new LinkedList<String>();
-		for(Pair<String,?> a : keywordParams) {
-			names.add(a.fst);
+		if (keywordNames == null) {
+			List<String> names = new ArrayList<String>(keywords.length);
+			for(Atom a : keywords) {
+				names.add(a.toString());
+			}
+			keywordNames = Collections.unmodifiableList(names);
 		}
-		return names;
+		return keywordNames;
 	}
 	
-	public int getUse(String keyword) {
-		for(int i = 0; i < keywordParams.length; i++) {
-			if (keywordParams[i].fst.equals(keyword)) {
-				return keywordParams[i].snd;
+	public int getUse(Atom keyword) {
+		for(int i = 0; i < keywords.length; i++) {
+			if (keywords[i] == keyword) {
+				return keywordUses[i];
 			}
 		}
 		
 		return -1;
 	}
 	
+	public int getUse(String keyword) {
+		return getUse(Atom.findOrCreateUnicodeAtom(keyword));
+	}
+	
 	@Override
 	public int getUse(int j) throws UnsupportedOperationException {
 		if (j < positionalParams.length) {
 			return positionalParams[j];
 		} else {
 			assert j < getNumberOfTotalParameters();
-			return keywordParams[j - positionalParams.length].snd;
+			return keywordUses[j - positionalParams.length];
 		}
 	}
 
@@ -93,27 +152,21 @@ public class PythonInvokeInstruction extends SSAAbstractInvokeInstruction {
 		return result;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public SSAInstruction copyForSSA(SSAInstructionFactory insts, int[] defs, int[] uses) {
 		int nr = defs==null || defs.length == 0? result: defs[0];
 		int ne = defs==null || defs.length == 0? exception: defs[1];
 		
 		int[] newpos = positionalParams;
-		Pair<String,Integer>[] newkey = keywordParams;
+		int[] newkey = keywordUses;
 		if (uses != null && uses.length > 0) {
-			int j = 0;
 			newpos = new int[ positionalParams.length ];
-			for(int i = 0; i < positionalParams.length; i++, j++) {
-				newpos[i] = uses[j];
-			}
-			newkey = new Pair[ keywordParams.length ];
-			for(int i = 0; i < keywordParams.length; i++, j++) {
-				newkey[i] = Pair.make(keywordParams[i].fst, uses[j]);
-			}
+			System.arraycopy(uses, 0, newpos, 0, positionalParams.length);
+			newkey = new int[ keywordUses.length ];
+			System.arraycopy(uses, positionalParams.length, newkey, 0, keywordUses.length);
 		}
 		
-		return new PythonInvokeInstruction(iindex, nr, ne, site, newpos, newkey);
+		return new PythonInvokeInstruction(iindex, nr, ne, site, newpos, keywords, newkey);
 	}
 
 	@Override
@@ -134,10 +187,8 @@ public class PythonInvokeInstruction extends SSAAbstractInvokeInstruction {
 	@Override
 	public String toString(SymbolTable symbolTable) {
 		String s = "";
-		if (keywordParams != null) {
-			for(Pair<String,Integer> kp : keywordParams) {
-				s = s + " " + kp.fst + ":" + kp.snd;
-			}
+		for(int i = 0; i < keywords.length; i++) {
+			s = s + " " + keywords[i] + ":" + keywordUses[i];
 		}
 		return super.toString(symbolTable) + s;
 	}
@@ -0,0 +1,156 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/**
+ * Limits on the wall clock time, solver steps and heap that one call
+ * graph construction may use.  A budget is enforced by the progress
+ * monitor it wraps around the caller's, which reports itself canceled
+ * once any limit is exceeded; the solver polls it, and stops with what
+ * it has built so far.
+ */
+public class AnalysisBudget {
+
+	public static final AnalysisBudget UNLIMITED = new AnalysisBudget(-1, -1, -1);
+
+	/**
+	 * how many polls of the monitor pass between checks of the clock and
+	 * of the heap
+	 */
+	private static final int CHECK_INTERVAL = 256;
+
+	private final long millis;
+	private final long steps;
+	private final double heapFraction;
+
+	/**
+	 * @param millis wall clock time limit, or negative for none
+	 * @param steps limit on the number of times the solver checks back, or negative for none
+	 * @param heapFraction limit on the fraction of the maximum heap in use, or negative for none
+	 */
+	public AnalysisBudget(long millis, long steps, double heapFraction) {
+		this.millis = millis;
+		this.steps = steps;
+		this.heapFraction = heapFraction;
+	}
+
+	public AnalysisBudget withMillis(long millis) {
+		return new AnalysisBudget(millis, steps, heapFraction);
+	}
+
+	public AnalysisBudget withSteps(long steps) {
+		return new AnalysisBudget(millis, steps, heapFraction);
+	}
+
+	public AnalysisBudget withHeapFraction(double heapFraction) {
+		return new AnalysisBudget(millis, steps, heapFraction);
+	}
+
+	public boolean isUnlimited() {
+		return millis < 0 && steps < 0 && heapFraction < 0;
+	}
+
+	/**
+	 * @return a monitor that enforces this budget from now on, and
+	 * otherwise forwards to the given one, which may be null
+	 */
+	public Monitor start(IProgressMonitor parent) {
+		return new Monitor(parent);
+	}
+
+	public class Monitor implements IProgressMonitor {
+		private final IProgressMonitor parent;
+		private final long deadline;
+		private long polls = 0;
+		private String exceeded;
+
+		private Monitor(IProgressMonitor parent) {
+			this.parent = parent;
+			this.deadline = millis < 0? Long.MAX_VALUE: System.nanoTime() + millis * 1000000L;
+		}
+
+		/**
+		 * @return which limit was exceeded, or null if none was
+		 */
+		public String getExceeded() {
+			return exceeded;
+		}
+
+		private String check() {
+			if (steps >= 0 && polls > steps) {
+				return "step limit of " + steps + " reached";
+			}
+			if (polls % CHECK_INTERVAL == 0) {
+				if (System.nanoTime() > deadline) {
+					return "time limit of " + millis + "ms reached";
+				}
+				if (heapFraction >= 0) {
+					Runtime rt = Runtime.getRuntime();
+					if (rt.totalMemory() - rt.freeMemory() > heapFraction * rt.maxMemory()) {
+						return "heap limit of " + Math.round(heapFraction * 100) + "% reached";
+					}
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			if (exceeded == null) {
+				polls++;
+				exceeded = check();
+			}
+			return exceeded != null || (parent != null && parent.isCanceled());
+		}
+
+		@Override
+		public String getCancelMessage() {
+			return exceeded != null? exceeded: parent != null? parent.getCancelMessage(): null;
+		}
+
+		@Override
+		public void beginTask(String task, int totalWork) {
+			if (parent != null) {
+				parent.beginTask(task, totalWork);
+			}
+		}
+
+		@Override
+		public void subTask(String subTask) {
+			if (parent != null) {
+				parent.subTask(subTask);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			if (parent != null) {
+				parent.cancel();
+			}
+		}
+
+		@Override
+		public void done() {
+			if (parent != null) {
+				parent.done();
+			}
+		}
+
+		@Override
+		public void worked(int units) {
+			if (parent != null) {
+				parent.worked(units);
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetAction;
+import com.ibm.wala.util.intset.MutableIntSet;
+
+/**
+ * An int set that is an interned {@link SharedSparseIntSet} while it is
+ * small, and moves to one of WALA's shared bit vector sets once it grows
+ * past the threshold of its factory, since a sorted array is then both
+ * bigger and slower than a bit vector.
+ */
+public class CompactIntSet implements MutableIntSet {
+
+	private static final long serialVersionUID = -2786430197366257934L;
+
+	private final CompactIntSetFactory factory;
+
+	private MutableIntSet set;
+
+	CompactIntSet(CompactIntSetFactory factory, MutableIntSet set) {
+		this.factory = factory;
+		this.set = set;
+		fit();
+	}
+
+	private static IntSet unwrap(IntSet s) {
+		return s instanceof CompactIntSet? ((CompactIntSet)s).set: s;
+	}
+
+	private void fit() {
+		if (set instanceof SharedSparseIntSet && set.size() > factory.getThreshold()) {
+			set = factory.copyOf(set);
+		}
+	}
+
+	/**
+	 * @return whether this set has outgrown the sorted array
+	 */
+	public boolean isBitVector() {
+		return ! (set instanceof SharedSparseIntSet);
+	}
+
+	@Override
+	public boolean contains(int i) {
+		return set.contains(i);
+	}
+
+	@Override
+	public boolean containsAny(IntSet s) {
+		return set.containsAny(unwrap(s));
+	}
+
+	@Override
+	public IntSet intersection(IntSet that) {
+		return set.intersection(unwrap(that));
+	}
+
+	@Override
+	public IntSet union(IntSet that) {
+		return set.union(unwrap(that));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return set.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return set.size();
+	}
+
+	@Override
+	public IntIterator intIterator() {
+		return set.intIterator();
+	}
+
+	@Override
+	public void foreach(IntSetAction action) {
+		set.foreach(action);
+	}
+
+	@Override
+	public void foreachExcluding(IntSet X, IntSetAction action) {
+		set.foreachExcluding(unwrap(X), action);
+	}
+
+	@Override
+	public int max() {
+		return set.max();
+	}
+
+	@Override
+	public boolean sameValue(IntSet that) {
+		return set.sameValue(unwrap(that));
+	}
+
+	@Override
+	public boolean isSubset(IntSet that) {
+		return set.isSubset(unwrap(that));
+	}
+
+	@Override
+	public void copySet(IntSet that) {
+		set = factory.copyOf(unwrap(that));
+	}
+
+	@Override
+	public boolean addAll(IntSet s) {
+		boolean changed = set.addAll(unwrap(s));
+		fit();
+		return changed;
+	}
+
+	@Override
+	public boolean add(int i) {
+		boolean changed = set.add(i);
+		fit();
+		return changed;
+	}
+
+	@Override
+	public boolean remove(int i) {
+		return set.remove(i);
+	}
+
+	@Override
+	public void clear() {
+		set.clear();
+	}
+
+	@Override
+	public void intersectWith(IntSet s) {
+		set.intersectWith(unwrap(s));
+	}
+
+	@Override
+	public boolean addAllInIntersection(IntSet other, IntSet filter) {
+		boolean changed = set.addAllInIntersection(unwrap(other), unwrap(filter));
+		fit();
+		return changed;
+	}
+
+	@Override
+	public String toString() {
+		return set.toString();
+	}
+}
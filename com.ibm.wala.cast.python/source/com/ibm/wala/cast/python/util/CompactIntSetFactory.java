@@ -0,0 +1,86 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableSharedBitVectorIntSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
+
+/**
+ * makes {@link CompactIntSet}s; each factory interns the small sets it
+ * makes, so one is used per analysis
+ */
+public class CompactIntSetFactory implements MutableIntSetFactory<CompactIntSet> {
+
+	public static final int DEFAULT_THRESHOLD = 32;
+
+	private final int threshold;
+
+	private final SharedSparseIntSetFactory small = new SharedSparseIntSetFactory();
+
+	private final MutableSharedBitVectorIntSetFactory large = new MutableSharedBitVectorIntSetFactory();
+
+	public CompactIntSetFactory() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param threshold the size past which a set moves to a bit vector
+	 */
+	public CompactIntSetFactory(int threshold) {
+		this.threshold = threshold;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return a set of the representation that suits the size of the
+	 * given contents
+	 */
+	MutableIntSet copyOf(IntSet x) {
+		if (x.size() > threshold) {
+			return large.makeCopy(x);
+		} else {
+			return small.makeCopy(x);
+		}
+	}
+
+	@Override
+	public CompactIntSet make() {
+		return new CompactIntSet(this, small.make());
+	}
+
+	@Override
+	public CompactIntSet make(int[] set) {
+		return new CompactIntSet(this, small.make(set));
+	}
+
+	@Override
+	public CompactIntSet parse(String string) throws NumberFormatException {
+		return makeCopy(new MutableSparseIntSetFactory().parse(string));
+	}
+
+	@Override
+	public CompactIntSet makeCopy(IntSet x) {
+		if (x instanceof CompactIntSet) {
+			CompactIntSet s = make();
+			s.copySet(x);
+			return s;
+		} else {
+			return new CompactIntSet(this, copyOf(x));
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+
+/**
+ * An int set factory, installed as WALA's default while some analysis
+ * needs it, that makes sets with the factory the calling thread has
+ * bound, if any, and otherwise with the default it replaced.  WALA's
+ * solver makes its points-to sets through the default factory, so
+ * binding a factory around solving chooses their representation for one
+ * analysis without changing it for analyses running on other threads.
+ * Once the last analysis that installed it uninstalls it, the default
+ * it replaced is restored, so that sets made outside of such analyses
+ * no longer pay for looking up the thread's factory.
+ */
+public class PerThreadIntSetFactory implements MutableIntSetFactory<MutableIntSet> {
+
+	private static PerThreadIntSetFactory installed;
+
+	private static int users = 0;
+
+	/**
+	 * make this WALA's default factory until the matching call to
+	 * {@link #uninstall()}
+	 */
+	public static synchronized PerThreadIntSetFactory install() {
+		if (users++ == 0) {
+			installed = new PerThreadIntSetFactory(IntSetUtil.getDefaultIntSetFactory());
+			IntSetUtil.setDefaultIntSetFactory(installed);
+		}
+		return installed;
+	}
+
+	/**
+	 * restore the default factory it replaced once no analysis needs it
+	 */
+	public static synchronized void uninstall() {
+		assert users > 0;
+		if (--users == 0) {
+			IntSetUtil.setDefaultIntSetFactory(installed.fallback);
+			installed = null;
+		}
+	}
+
+	private final MutableIntSetFactory<?> fallback;
+
+	private final ThreadLocal<MutableIntSetFactory<?>> bound = new ThreadLocal<>();
+
+	private PerThreadIntSetFactory(MutableIntSetFactory<?> fallback) {
+		this.fallback = fallback;
+	}
+
+	/**
+	 * make the sets of the calling thread with the given factory, or with
+	 * the default if it is null
+	 *
+	 * @return the factory bound until now, for restoring afterwards
+	 */
+	public MutableIntSetFactory<?> bind(MutableIntSetFactory<?> factory) {
+		MutableIntSetFactory<?> previous = bound.get();
+		if (factory == null) {
+			bound.remove();
+		} else {
+			bound.set(factory);
+		}
+		return previous;
+	}
+
+	private MutableIntSetFactory<?> current() {
+		MutableIntSetFactory<?> f = bound.get();
+		return f != null? f: fallback;
+	}
+
+	@Override
+	public MutableIntSet make(int[] set) {
+		return current().make(set);
+	}
+
+	@Override
+	public MutableIntSet parse(String string) throws NumberFormatException {
+		return current().parse(string);
+	}
+
+	@Override
+	public MutableIntSet makeCopy(IntSet x) {
+		return current().makeCopy(x);
+	}
+
+	@Override
+	public MutableIntSet make() {
+		return current().make();
+	}
+
+}
@@ -0,0 +1,339 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.ClassSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.FunctionSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.ModuleSummary;
+import com.ibm.wala.cast.python.ipa.summaries.PythonSummaryBundle.Return;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Generates summary bundles from the .pyi type stubs of libraries.
+ * Only the shape of a stub is used: the functions and classes at the
+ * top level of each module, the methods of each class, the names of
+ * all their parameters, and whether each returns nothing, an instance
+ * of a class of the same module, its argument of a type variable, or
+ * anything else.  The first of several overloads of a name is kept,
+ * properties are left out, and base classes are not followed.
+ *
+ * Usage: PyiSummaryGenerator stub-directory bundle-file
+ */
+public class PyiSummaryGenerator {
+
+	private static class Def {
+		private final String name;
+		private final List<String> params = new ArrayList<>();
+		private final List<String> annotations = new ArrayList<>();
+		private final String returns;
+
+		private Def(String name, String params, String returns, boolean dropFirst) {
+			this.name = name;
+			this.returns = returns == null? null: unquote(returns);
+			boolean first = true;
+			for(String p : splitTopLevel(params)) {
+				p = p.trim();
+				if (p.isEmpty() || p.startsWith("*") || p.equals("/")) {
+					continue;
+				}
+				if (first && dropFirst) {
+					first = false;
+					continue;
+				}
+				first = false;
+				String annotation = null;
+				int eq = indexOfTopLevel(p, '=');
+				if (eq >= 0) {
+					p = p.substring(0, eq).trim();
+				}
+				int colon = p.indexOf(':');
+				if (colon >= 0) {
+					annotation = unquote(p.substring(colon + 1));
+					p = p.substring(0, colon).trim();
+				}
+				this.params.add(p);
+				this.annotations.add(annotation);
+			}
+		}
+	}
+
+	private static String unquote(String s) {
+		s = s.trim();
+		if (s.length() > 1 && (s.startsWith("'") || s.startsWith("\"")) && s.charAt(s.length()-1) == s.charAt(0)) {
+			s = s.substring(1, s.length()-1).trim();
+		}
+		return s;
+	}
+
+	private static int indexOfTopLevel(String s, char c) {
+		int depth = 0;
+		for(int i = 0; i < s.length(); i++) {
+			char x = s.charAt(i);
+			if (x == c && depth == 0) {
+				return i;
+			} else if (x == '(' || x == '[' || x == '{') {
+				depth++;
+			} else if (x == ')' || x == ']' || x == '}') {
+				depth--;
+			}
+		}
+		return -1;
+	}
+
+	private static List<String> splitTopLevel(String s) {
+		List<String> result = new ArrayList<>();
+		int i;
+		while ((i = indexOfTopLevel(s, ',')) >= 0) {
+			result.add(s.substring(0, i));
+			s = s.substring(i + 1);
+		}
+		result.add(s);
+		return result;
+	}
+
+	private static int depthChange(String line) {
+		int depth = 0;
+		for(int i = 0; i < line.length(); i++) {
+			char x = line.charAt(i);
+			if (x == '(' || x == '[' || x == '{') {
+				depth++;
+			} else if (x == ')' || x == ']' || x == '}') {
+				depth--;
+			}
+		}
+		return depth;
+	}
+
+	private static String stripComment(String line) {
+		int hash = line.indexOf('#');
+		return hash >= 0? line.substring(0, hash): line;
+	}
+
+	private static int indentation(String line) {
+		int i = 0;
+		while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the logical lines of the given text, with continuation
+	 * lines joined and comments and blank lines removed
+	 */
+	private static List<String> logicalLines(String text) {
+		List<String> lines = new ArrayList<>();
+		StringBuilder current = null;
+		int depth = 0;
+		for(String line : text.split("\r?\n")) {
+			line = stripComment(line);
+			if (current == null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				current = new StringBuilder(line);
+			} else {
+				current.append(' ').append(line.trim());
+			}
+			depth += depthChange(line);
+			if (depth <= 0 && !line.endsWith("\\")) {
+				lines.add(current.toString());
+				current = null;
+				depth = 0;
+			} else if (line.endsWith("\\")) {
+				current.setLength(current.length() - 1);
+			}
+		}
+		if (current != null) {
+			lines.add(current.toString());
+		}
+		return lines;
+	}
+
+	private static Def parseDef(String line, boolean method, boolean isStatic) {
+		String s = line.trim();
+		if (s.startsWith("async ")) {
+			s = s.substring(6).trim();
+		}
+		s = s.substring(4);
+		int open = s.indexOf('(');
+		if (open < 0) {
+			return null;
+		}
+		String name = s.substring(0, open).trim();
+		String rest = s.substring(open + 1);
+		int close = indexOfTopLevel(rest, ')');
+		if (close < 0) {
+			return null;
+		}
+		String params = rest.substring(0, close);
+		String returns = null;
+		String tail = rest.substring(close + 1);
+		int arrow = tail.indexOf("->");
+		if (arrow >= 0) {
+			int colon = tail.lastIndexOf(':');
+			returns = tail.substring(arrow + 2, colon > arrow? colon: tail.length());
+		}
+		return new Def(name, params, returns, method && !isStatic);
+	}
+
+	private static FunctionSummary summarize(Def d, List<String> classes, Set<String> typeVars) {
+		if (d.returns == null) {
+			return new FunctionSummary(d.name, d.params, Return.OBJECT, -1);
+		} else if (d.returns.equals("None")) {
+			return new FunctionSummary(d.name, d.params, Return.NONE, -1);
+		} else if (classes.contains(d.returns)) {
+			return new FunctionSummary(d.name, d.params, Return.INSTANCE, classes.indexOf(d.returns));
+		} else if (typeVars.contains(d.returns) && d.annotations.indexOf(d.returns) >= 0 && d.annotations.indexOf(d.returns) == d.annotations.lastIndexOf(d.returns)) {
+			return new FunctionSummary(d.name, d.params, Return.PARAMETER, d.annotations.indexOf(d.returns));
+		} else {
+			return new FunctionSummary(d.name, d.params, Return.OBJECT, -1);
+		}
+	}
+
+	/**
+	 * summarize the stub of the given module
+	 */
+	public static ModuleSummary parse(String moduleName, String text) {
+		List<String> lines = logicalLines(text);
+
+		List<String> classNames = new ArrayList<>();
+		Set<String> typeVars = HashSetFactory.make();
+		for(String line : lines) {
+			String s = line.trim();
+			if (indentation(line) == 0) {
+				if (s.startsWith("class ")) {
+					String name = s.substring(6).split("[(:\\s]")[0];
+					if (! classNames.contains(name)) {
+						classNames.add(name);
+					}
+				} else if (s.matches("\\w+\\s*=\\s*(typing\\.)?TypeVar\\s*\\(.*")) {
+					typeVars.add(s.substring(0, s.indexOf('=')).trim());
+				}
+			}
+		}
+
+		Map<String, Def> functions = new TreeMap<>();
+		Map<String, Map<String, Def>> methods = HashMapFactory.make();
+		String currentClass = null;
+		int classIndent = 0;
+		boolean skip = false;
+		boolean isStatic = false;
+		for(String line : lines) {
+			String s = line.trim();
+			int indent = indentation(line);
+			if (currentClass != null && indent <= classIndent) {
+				currentClass = null;
+			}
+			if (s.startsWith("@")) {
+				skip |= s.startsWith("@property") || s.endsWith(".setter") || s.endsWith(".deleter");
+				isStatic |= s.startsWith("@staticmethod");
+				continue;
+			}
+			if (indent == 0 && s.startsWith("class ")) {
+				currentClass = s.substring(6).split("[(:\\s]")[0];
+				classIndent = indent;
+				if (! methods.containsKey(currentClass)) {
+					methods.put(currentClass, new TreeMap<>());
+				}
+			} else if (s.startsWith("def ") || s.startsWith("async def ")) {
+				if (! skip) {
+					if (indent == 0) {
+						Def d = parseDef(s, false, false);
+						if (d != null && ! functions.containsKey(d.name)) {
+							functions.put(d.name, d);
+						}
+					} else if (currentClass != null && indent > classIndent) {
+						Map<String, Def> ms = methods.get(currentClass);
+						Def d = parseDef(s, true, isStatic);
+						if (d != null && ! ms.containsKey(d.name)) {
+							ms.put(d.name, d);
+						}
+					}
+				}
+			}
+			skip = false;
+			isStatic = false;
+		}
+
+		List<FunctionSummary> fs = new ArrayList<>();
+		for(Def d : functions.values()) {
+			if (! d.name.startsWith("_")) {
+				fs.add(summarize(d, classNames, typeVars));
+			}
+		}
+		List<ClassSummary> cs = new ArrayList<>();
+		for(String c : classNames) {
+			List<FunctionSummary> ms = new ArrayList<>();
+			for(Def d : methods.get(c).values()) {
+				if (! d.name.startsWith("_") || d.name.equals("__init__") || d.name.equals("__call__")) {
+					ms.add(summarize(d, classNames, typeVars));
+				}
+			}
+			cs.add(new ClassSummary(c, ms));
+		}
+		return new ModuleSummary(moduleName, fs, cs);
+	}
+
+	/**
+	 * @return the module that the stub at the given path, relative to the
+	 * stub root, describes
+	 */
+	public static String moduleName(Path stub) {
+		String name = stub.toString().replace('\\', '/');
+		name = name.substring(0, name.length() - ".pyi".length());
+		if (name.equals("__init__")) {
+			return name;
+		} else if (name.endsWith("/__init__")) {
+			name = name.substring(0, name.length() - "/__init__".length());
+		}
+		return name;
+	}
+
+	/**
+	 * summarize every stub under the given directory
+	 */
+	public static List<ModuleSummary> generate(Path root) throws IOException {
+		PythonProjectLoader stubs = new PythonProjectLoader(root).include("**.pyi");
+		Map<String, ModuleSummary> modules = new TreeMap<>();
+		for(Map.Entry<Path, String> stub : stubs.readFiles().entrySet()) {
+			String name = moduleName(stubs.getRoot().relativize(stub.getKey()));
+			modules.put(name, parse(name, stub.getValue()));
+		}
+		return new ArrayList<>(modules.values());
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: PyiSummaryGenerator stub-directory bundle-file");
+			System.exit(1);
+		}
+
+		List<ModuleSummary> modules = generate(Paths.get(args[0]));
+		try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+			PythonSummaryBundle.write(modules, out);
+		}
+		System.err.println("wrote summaries of " + modules.size() + " modules to " + args[1]);
+	}
+}
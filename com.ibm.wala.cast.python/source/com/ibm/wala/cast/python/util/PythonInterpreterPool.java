@@ -0,0 +1,139 @@
+package com.ibm.wala.cast.python.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.python.core.PyBoolean;
+import org.python.core.PyFloat;
+import org.python.core.PyInteger;
+import org.python.core.PyLong;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+/**
+ * Interpreters for evaluating constant expressions, handed out to one
+ * thread at a time, and a bounded memo of the expressions already
+ * evaluated, including the ones that failed.
+ */
+public class PythonInterpreterPool {
+
+	private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors();
+
+	private static final int MAX_MEMO = 4096;
+
+	private static final Object NO_VALUE = new Object();
+
+	private static final BlockingQueue<PythonInterpreter> idle = new LinkedBlockingQueue<>(MAX_IDLE);
+
+	private static final Map<String,Object> memo = new LinkedHashMap<String,Object>(256, 0.75f, true) {
+		private static final long serialVersionUID = -6043187339256931525L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > MAX_MEMO;
+		}
+	};
+
+	private static final AtomicInteger evaluations = new AtomicInteger();
+
+	/**
+	 * number of constant expressions that were not in the memo, and so were evaluated
+	 */
+	public static int getEvaluationCount() {
+		return evaluations.get();
+	}
+
+	private static boolean initialized = false;
+
+	private static synchronized void initialize() {
+		if (! initialized) {
+			PySystemState.initialize();
+			initialized = true;
+		}
+	}
+
+	private static PythonInterpreter make() {
+		initialize();
+		return new PythonInterpreter(null, new PySystemState());
+	}
+
+	/**
+	 * create interpreters ahead of the first request, so that Jython
+	 * start up is not paid by it
+	 */
+	public static void prewarm(int count) {
+		for(int i = 0; i < count && idle.size() < MAX_IDLE; i++) {
+			idle.offer(make());
+		}
+	}
+
+	public static PythonInterpreter borrow() {
+		PythonInterpreter interp = idle.poll();
+		return interp != null? interp: make();
+	}
+
+	public static void release(PythonInterpreter interp) {
+		idle.offer(interp);
+	}
+
+	public static PyObject eval(String expr) {
+		PythonInterpreter interp = borrow();
+		try {
+			return interp.eval(expr);
+		} finally {
+			release(interp);
+		}
+	}
+
+	private static Object toJava(PyObject x) {
+		if (x instanceof PyBoolean) {
+			return x.__nonzero__();
+		} else if (x instanceof PyInteger) {
+			return x.asInt();
+		} else if (x instanceof PyLong) {
+			try {
+				return x.asLong();
+			} catch (RuntimeException e) {
+				return null;
+			}
+		} else if (x instanceof PyFloat) {
+			return x.asDouble();
+		} else if (x instanceof PyString) {
+			return x.toString();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * evaluate a constant expression to an Integer, Long, Double, Boolean or
+	 * String, or null if it does not evaluate to one of those
+	 */
+	public static Object evalConstant(String expr) {
+		synchronized (memo) {
+			Object v = memo.get(expr);
+			if (v != null) {
+				return v == NO_VALUE? null: v;
+			}
+		}
+
+		evaluations.incrementAndGet();
+		Object v;
+		try {
+			v = toJava(eval(expr));
+		} catch (RuntimeException e) {
+			// not a constant in an empty namespace
+			v = null;
+		}
+
+		synchronized (memo) {
+			memo.put(expr, v == null? NO_VALUE: v);
+		}
+		return v;
+	}
+}
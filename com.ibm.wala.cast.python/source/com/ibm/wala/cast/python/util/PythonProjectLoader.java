@@ -0,0 +1,307 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.SourceURLModule;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Finds the Python modules of a project under a root directory, and
+ * reads them in parallel.  Files are selected by include and exclude
+ * globs, matched against their path relative to the root, and by
+ * .gitignore-style ignore files found along the way.
+ */
+public class PythonProjectLoader {
+
+	public static final String DEFAULT_INCLUDE = "**.py";
+
+	/**
+	 * a module whose text has already been read
+	 */
+	public static class TextModule extends SourceURLModule {
+		private final String text;
+
+		public TextModule(URL url, String text) {
+			super(url);
+			this.text = text;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public Reader getInputReader() {
+			return new StringReader(text);
+		}
+	}
+
+	private static class IgnoreRule {
+		private final Path base;
+		private final PathMatcher matcher;
+		private final boolean anchored;
+		private final boolean negated;
+		private final boolean directoryOnly;
+
+		/**
+		 * @param base directory of the ignore file relative to the root, or null for the root itself
+		 */
+		private IgnoreRule(Path base, String pattern) {
+			this.base = base;
+
+			negated = pattern.startsWith("!");
+			if (negated) {
+				pattern = pattern.substring(1);
+			}
+
+			directoryOnly = pattern.endsWith("/");
+			if (directoryOnly) {
+				pattern = pattern.substring(0, pattern.length() - 1);
+			}
+
+			anchored = pattern.contains("/");
+			if (pattern.startsWith("/")) {
+				pattern = pattern.substring(1);
+			}
+			if (pattern.startsWith("**/")) {
+				pattern = "{" + pattern.substring(3) + "," + pattern + "}";
+			}
+
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		}
+
+		/**
+		 * @return whether the rule says anything about the given path,
+		 * which is relative to the project root
+		 */
+		private boolean matches(Path path, boolean isDirectory) {
+			if (directoryOnly && !isDirectory) {
+				return false;
+			}
+			Path relative = path;
+			if (base != null) {
+				if (! path.startsWith(base)) {
+					return false;
+				}
+				relative = base.relativize(path);
+			}
+			return matcher.matches(anchored? relative: relative.getFileName());
+		}
+	}
+
+	private final Path root;
+
+	private final List<PathMatcher> includes = new ArrayList<>();
+
+	private final List<PathMatcher> excludes = new ArrayList<>();
+
+	private final Set<String> ignoreFiles = HashSetFactory.make();
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	public PythonProjectLoader(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+		ignoreFiles.add(".gitignore");
+	}
+
+	public PythonProjectLoader include(String glob) {
+		includes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+		return this;
+	}
+
+	public PythonProjectLoader exclude(String glob) {
+		excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+		return this;
+	}
+
+	/**
+	 * also honour ignore files with the given name, in addition to .gitignore
+	 */
+	public PythonProjectLoader ignoreFile(String name) {
+		ignoreFiles.add(name);
+		return this;
+	}
+
+	public PythonProjectLoader setParallelism(int threads) {
+		this.parallelism = threads;
+		return this;
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	private static boolean anyMatch(List<PathMatcher> matchers, Path path) {
+		for(PathMatcher m : matchers) {
+			if (m.matches(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isIgnored(List<IgnoreRule> rules, Path path, boolean isDirectory) {
+		boolean ignored = false;
+		for(IgnoreRule r : rules) {
+			if (r.matches(path, isDirectory)) {
+				ignored = !r.negated;
+			}
+		}
+		return ignored;
+	}
+
+	private List<IgnoreRule> readIgnoreRules(Path dir) throws IOException {
+		List<IgnoreRule> rules = new ArrayList<>();
+		for(String name : ignoreFiles) {
+			Path file = dir.resolve(name);
+			if (Files.isRegularFile(file)) {
+				for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+					String pattern = line.trim();
+					if (! pattern.isEmpty() && !pattern.startsWith("#")) {
+						rules.add(new IgnoreRule(dir.equals(root)? null: root.relativize(dir), pattern));
+					}
+				}
+			}
+		}
+		return rules;
+	}
+
+	/**
+	 * @return the selected files, in a stable order
+	 */
+	public List<Path> findFiles() throws IOException {
+		List<PathMatcher> includes = this.includes.isEmpty()?
+			Collections.singletonList(FileSystems.getDefault().getPathMatcher("glob:" + DEFAULT_INCLUDE)):
+			this.includes;
+
+		List<Path> files = new ArrayList<>();
+		LinkedList<List<IgnoreRule>> scopes = new LinkedList<>();
+		List<IgnoreRule> rules = new ArrayList<>();
+
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Path relative = root.relativize(dir);
+				if (! dir.equals(root)) {
+					if (".git".equals(dir.getFileName().toString()) ||
+						anyMatch(excludes, relative) ||
+						isIgnored(rules, relative, true)) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+				}
+
+				List<IgnoreRule> local = readIgnoreRules(dir);
+				scopes.push(local);
+				rules.addAll(local);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				List<IgnoreRule> local = scopes.pop();
+				rules.subList(rules.size() - local.size(), rules.size()).clear();
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				Path relative = root.relativize(file);
+				if (attrs.isRegularFile() &&
+					anyMatch(includes, relative) &&
+					!anyMatch(excludes, relative) &&
+					!isIgnored(rules, relative, false)) {
+					files.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * @return the text of each selected file, read in parallel, in the
+	 * order of {@link #findFiles()}
+	 */
+	public Map<Path,String> readFiles() throws IOException {
+		List<Path> files = findFiles();
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			List<ForkJoinTask<String>> reads = new ArrayList<>(files.size());
+			for(Path file : files) {
+				reads.add(pool.submit(() -> {
+					try {
+						return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}));
+			}
+
+			Map<Path,String> result = new LinkedHashMap<>();
+			for(int i = 0; i < files.size(); i++) {
+				try {
+					result.put(files.get(i), reads.get(i).join());
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				}
+			}
+			return result;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return in-memory modules for the selected files, for
+	 * {@link com.ibm.wala.cast.python.client.PythonAnalysisEngine#setModuleFiles}
+	 */
+	public Set<Module> loadModules() throws IOException {
+		Set<Module> modules = HashSetFactory.make();
+		for(Map.Entry<Path,String> file : readFiles().entrySet()) {
+			modules.add(new TextModule(file.getKey().toUri().toURL(), file.getValue()));
+		}
+		return modules;
+	}
+}
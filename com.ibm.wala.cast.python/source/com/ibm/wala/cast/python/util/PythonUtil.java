@@ -1,18 +1,15 @@
 package com.ibm.wala.cast.python.util;
 
-import org.python.core.PySystemState;
-import org.python.util.PythonInterpreter;
+import org.python.core.PyObject;
 
 public class PythonUtil {
 
-	private static PythonInterpreter interp = null;
-	
-	public static PythonInterpreter getInterp() {
-		if (interp == null) {
-			PySystemState.initialize(  );
-			interp = new PythonInterpreter(  );
-		}
-		return interp;
+	public static PyObject eval(String expr) {
+		return PythonInterpreterPool.eval(expr);
+	}
+
+	public static Object evalConstant(String expr) {
+		return PythonInterpreterPool.evalConstant(expr);
 	}
 
 }
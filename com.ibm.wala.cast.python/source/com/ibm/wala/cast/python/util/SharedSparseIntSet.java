@@ -0,0 +1,203 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import java.util.Arrays;
+
+import com.ibm.wala.util.intset.BitVectorBase;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A sorted-array int set whose backing array is shared, copy on write,
+ * with copies of it and, since each change interns the new contents in
+ * its factory, with every other live set of the same contents.  Points-to
+ * sets of object literals are mostly small and mostly repeated, so this
+ * costs a few words per set where a bit vector costs one bit per
+ * instance key.
+ */
+public class SharedSparseIntSet extends MutableSparseIntSet {
+
+	private static final long serialVersionUID = 3405523839186372549L;
+
+	/**
+	 * whether the backing array may also back other sets
+	 */
+	private boolean shared = false;
+
+	/**
+	 * the interned contents, held so that the factory keeps them while
+	 * this set uses them
+	 */
+	private SharedSparseIntSetFactory.Contents contents;
+
+	private final SharedSparseIntSetFactory factory;
+
+	SharedSparseIntSet(SharedSparseIntSetFactory factory) {
+		super();
+		this.factory = factory;
+	}
+
+	/**
+	 * @param elements sorted, distinct elements, which the set takes over
+	 */
+	SharedSparseIntSet(SharedSparseIntSetFactory factory, int[] elements) {
+		super(elements);
+		this.factory = factory;
+		intern();
+	}
+
+	/**
+	 * a copy of the given set, sharing its backing array until either is
+	 * modified
+	 */
+	SharedSparseIntSet(SharedSparseIntSet other) {
+		super();
+		this.factory = other.factory;
+		share(other);
+	}
+
+	private void share(SharedSparseIntSet other) {
+		elements = other.elements;
+		size = other.size;
+		contents = other.contents;
+		shared = other.shared = elements != null;
+	}
+
+	private void unshare() {
+		if (shared) {
+			elements = Arrays.copyOf(elements, elements.length);
+			shared = false;
+			contents = null;
+		}
+	}
+
+	/**
+	 * replace the backing array with the one the factory keeps for the
+	 * same contents
+	 */
+	private void intern() {
+		if (size == 0) {
+			contents = null;
+			return;
+		}
+
+		contents = factory.intern(elements, size);
+		elements = contents.elements;
+		shared = true;
+	}
+
+	/**
+	 * @return whether the two sets use one backing array
+	 */
+	public boolean sharesElementsWith(SharedSparseIntSet other) {
+		return elements != null && elements == other.elements;
+	}
+
+	@Override
+	public boolean add(int value) {
+		if (contains(value)) {
+			return false;
+		}
+		unshare();
+		super.add(value);
+		intern();
+		return true;
+	}
+
+	@Override
+	public boolean remove(int value) {
+		if (! contains(value)) {
+			return false;
+		}
+		unshare();
+		super.remove(value);
+		intern();
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		unshare();
+		super.clear();
+		contents = null;
+	}
+
+	@Override
+	public void copySet(IntSet that) {
+		if (that instanceof SharedSparseIntSet) {
+			share((SharedSparseIntSet)that);
+		} else {
+			unshare();
+			super.copySet(that);
+			intern();
+		}
+	}
+
+	@Override
+	public boolean addAll(IntSet set) {
+		if (set == null || set.isSubset(this)) {
+			return false;
+		}
+		unshare();
+		boolean changed = super.addAll(set);
+		intern();
+		return changed;
+	}
+
+	@Override
+	public boolean addAllInIntersection(IntSet other, IntSet filter) {
+		unshare();
+		boolean changed = super.addAllInIntersection(other, filter);
+		intern();
+		return changed;
+	}
+
+	@Override
+	public void intersectWith(IntSet set) {
+		unshare();
+		super.intersectWith(set);
+		intern();
+	}
+
+	/**
+	 * does not intern, since removing elements one at a time goes through
+	 * here, and the callers intern once they are done
+	 */
+	@Override
+	public void removeElementAt(int idx) {
+		unshare();
+		super.removeElementAt(idx);
+	}
+
+	@Override
+	public void removeAll(BitVectorIntSet v) {
+		unshare();
+		super.removeAll(v);
+		intern();
+	}
+
+	@Override
+	public <T extends BitVectorBase<T>> void removeAll(T v) {
+		unshare();
+		super.removeAll(v);
+		intern();
+	}
+
+	@Override
+	public boolean removeAll(MutableSparseIntSet set) {
+		unshare();
+		boolean changed = super.removeAll(set);
+		intern();
+		return changed;
+	}
+}
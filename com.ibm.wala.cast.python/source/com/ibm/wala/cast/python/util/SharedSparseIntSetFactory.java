@@ -0,0 +1,109 @@
+/******************************************************************************
+ * Copyright (c) 2018 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *****************************************************************************/
+package com.ibm.wala.cast.python.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSetFactory;
+import com.ibm.wala.util.intset.MutableSparseIntSetFactory;
+
+/**
+ * makes {@link SharedSparseIntSet}s, and keeps one backing array for
+ * each contents that some set it made holds
+ */
+public class SharedSparseIntSetFactory implements MutableIntSetFactory<SharedSparseIntSet> {
+
+	/**
+	 * sorted, distinct elements, equal by value
+	 */
+	static final class Contents {
+		final int[] elements;
+		private final int hash;
+
+		private Contents(int[] elements) {
+			this.elements = elements;
+			this.hash = Arrays.hashCode(elements);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Contents && Arrays.equals(elements, ((Contents)o).elements);
+		}
+	}
+
+	/**
+	 * the interned contents, which are dropped once no set holds them
+	 */
+	private final Map<Contents, WeakReference<Contents>> canonical = new WeakHashMap<>();
+
+	/**
+	 * @return the interned contents equal to the first size elements of
+	 * the given array, which become those contents if there were none
+	 */
+	synchronized Contents intern(int[] elements, int size) {
+		Contents key = new Contents(size == elements.length? elements: Arrays.copyOf(elements, size));
+		WeakReference<Contents> ref = canonical.get(key);
+		Contents c = ref == null? null: ref.get();
+		if (c == null) {
+			canonical.put(key, new WeakReference<>(key));
+			c = key;
+		}
+		return c;
+	}
+
+	@Override
+	public SharedSparseIntSet make() {
+		return new SharedSparseIntSet(this);
+	}
+
+	@Override
+	public SharedSparseIntSet make(int[] set) {
+		if (set.length == 0) {
+			return new SharedSparseIntSet(this);
+		}
+
+		int[] sorted = set.clone();
+		Arrays.sort(sorted);
+		int n = 1;
+		for(int i = 1; i < sorted.length; i++) {
+			if (sorted[i] != sorted[n-1]) {
+				sorted[n++] = sorted[i];
+			}
+		}
+		return new SharedSparseIntSet(this, Arrays.copyOf(sorted, n));
+	}
+
+	@Override
+	public SharedSparseIntSet parse(String string) throws NumberFormatException {
+		return makeCopy(new MutableSparseIntSetFactory().parse(string));
+	}
+
+	@Override
+	public SharedSparseIntSet makeCopy(IntSet x) {
+		if (x instanceof SharedSparseIntSet) {
+			return new SharedSparseIntSet((SharedSparseIntSet)x);
+		} else {
+			SharedSparseIntSet s = new SharedSparseIntSet(this);
+			s.copySet(x);
+			return s;
+		}
+	}
+
+}